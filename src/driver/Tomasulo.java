@@ -1,29 +1,289 @@
 package driver;
 
 import simulator.*;
+import functionalUnits.SelectionPolicy;
+import tsgui.TSGui;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 
 class Tomasulo
 {
+    static final String USAGE = "Usage: java Tomasulo <filename>.hex [-gui]" +
+        " [-checkpoint <cycle> <file>] [-arch-checkpoint <cycle> <file>] [-restore <file>] [-functional]" +
+        " [-sample <warmup> <measure> <period>] [-check] [-select oldest|index]" +
+        " [-prf <gprs> <fprs>] [-output <file>] [-record <file>] [-trace <file>] [-cores <n>]" +
+        " [-smt <contexts> rr|icount] [-machine <name=value,...>] [-latency] [-latency-csv <file>] [-critical] [-oracle]" +
+        " [-sweep <spec> <results.csv> [-cache <file>]]" +
+        " [-search hill|genetic <budget> <front.csv> [-workload <file,...>] [-cache <file>]] [-frames <file>]\n" +
+        "       java Tomasulo -replay <frames>";
+
     public static void main(String args[]) throws IOException
+    {
+        try
+        {
+            run(args);
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        catch (IllegalArgumentException e)
+        {
+            Output.getInstance().flush();
+            System.out.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Parses the arguments and runs the mode they select; bad values surface as IllegalArgumentException
+    private static void run(String args[]) throws IOException
     {
         Simulator TS;
+        if (args.length == 2 && args[0].equals("-replay"))
+        {
+            TSGui.replay(args[1]);
+            return;
+        }
         if ((args.length == 0) || (args[0].endsWith(".hex") == false))
         {
-            System.out.println("Usage: java Tomasulo <filename>.hex [-gui]");
+            System.out.println(USAGE);
             System.exit(1);
         }
         if (!((new File(args[0])).exists()))
         {
             System.out.println(args[0] + " does not exist");
-            System.out.println("Usage: java Tomasulor <filename>.hex [-gui]");
+            System.out.println(USAGE);
             System.exit(0);
         }
         boolean gui = false;
-        if (args.length > 1 && args[1].equals("-gui")) gui = true;
+        int checkpointCycle = -1;
+        String checkpointFile = null;
+        boolean architectural = false;
+        String restoreFile = null;
+        boolean functional = false;
+        long[] sample = null;
+        boolean check = false;
+        SelectionPolicy policy = SelectionPolicy.OLDEST_FIRST;
+        int[] prf = null;
+        String recordFile = null;
+        String traceFile = null;
+        int cores = 0;
+        int contexts = 0;
+        FetchPolicy fetchPolicy = FetchPolicy.ROUND_ROBIN;
+        MachineConfig machine = new MachineConfig();
+        String sweepSpec = null;
+        String sweepResults = null;
+        String cacheFile = null;
+        boolean latency = false;
+        boolean critical = false;
+        boolean oracle = false;
+        String latencyFile = null;
+        SearchStrategy strategy = null;
+        int budget = 0;
+        String frontFile = null;
+        String framesFile = null;
+        List<String> workload = new ArrayList<String>();
+        workload.add(args[0]);
+        for (int i = 1; i < args.length; i++)
+        {
+            if (args[i].equals("-gui"))
+                gui = true;
+            else if (args[i].equals("-checkpoint") && i + 2 < args.length)
+            {
+                checkpointCycle = Integer.parseInt(args[++i]);
+                checkpointFile = args[++i];
+            }
+            else if (args[i].equals("-arch-checkpoint") && i + 2 < args.length)
+            {
+                checkpointCycle = Integer.parseInt(args[++i]);
+                checkpointFile = args[++i];
+                architectural = true;
+            }
+            else if (args[i].equals("-restore") && i + 1 < args.length)
+                restoreFile = args[++i];
+            else if (args[i].equals("-functional"))
+                functional = true;
+            else if (args[i].equals("-check"))
+                check = true;
+            else if (args[i].equals("-select") && i + 1 < args.length &&
+                (args[i + 1].equals("oldest") || args[i + 1].equals("index")))
+                policy = args[++i].equals("oldest") ? SelectionPolicy.OLDEST_FIRST : SelectionPolicy.INDEX_ORDER;
+            else if (args[i].equals("-output") && i + 1 < args.length)
+                Output.getInstance().setFile(args[++i]);
+            else if (args[i].equals("-record") && i + 1 < args.length)
+                recordFile = args[++i];
+            else if (args[i].equals("-trace") && i + 1 < args.length)
+                traceFile = args[++i];
+            else if (args[i].equals("-cores") && i + 1 < args.length)
+                cores = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-smt") && i + 2 < args.length &&
+                (args[i + 2].equals("rr") || args[i + 2].equals("icount")))
+            {
+                contexts = Integer.parseInt(args[++i]);
+                fetchPolicy = args[++i].equals("rr") ? FetchPolicy.ROUND_ROBIN : FetchPolicy.ICOUNT;
+            }
+            else if (args[i].equals("-machine") && i + 1 < args.length)
+                machine = MachineConfig.parse(args[++i]);
+            else if (args[i].equals("-sweep") && i + 2 < args.length)
+            {
+                sweepSpec = args[++i];
+                sweepResults = args[++i];
+            }
+            else if (args[i].equals("-latency"))
+                latency = true;
+            else if (args[i].equals("-critical"))
+                critical = true;
+            else if (args[i].equals("-oracle"))
+                oracle = true;
+            else if (args[i].equals("-latency-csv") && i + 1 < args.length)
+            {
+                latency = true;
+                latencyFile = args[++i];
+            }
+            else if (args[i].equals("-frames") && i + 1 < args.length)
+                framesFile = args[++i];
+            else if (args[i].equals("-cache") && i + 1 < args.length)
+                cacheFile = args[++i];
+            else if (args[i].equals("-search") && i + 3 < args.length &&
+                (args[i + 1].equals("hill") || args[i + 1].equals("genetic")))
+            {
+                strategy = args[++i].equals("hill") ? SearchStrategy.HILL_CLIMBING : SearchStrategy.GENETIC;
+                budget = Integer.parseInt(args[++i]);
+                frontFile = args[++i];
+            }
+            else if (args[i].equals("-workload") && i + 1 < args.length)
+            {
+                for (String program : args[++i].split(","))
+                    if (!workload.contains(program))
+                        workload.add(program);
+            }
+            else if (args[i].equals("-prf") && i + 2 < args.length)
+            {
+                prf = new int[2];
+                prf[0] = Integer.parseInt(args[++i]);
+                prf[1] = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-sample") && i + 3 < args.length)
+            {
+                sample = new long[3];
+                for (int j = 0; j < 3; j++)
+                    sample[j] = Long.parseLong(args[++i]);
+            }
+            else
+            {
+                System.out.println(USAGE);
+                System.exit(1);
+            }
+        }
 
-        TS = new Simulator(args[0], gui);
+        if (strategy != null)
+        {
+            new Search(workload, machine, budget, strategy).run(frontFile, (cacheFile != null) ? cacheFile : frontFile + ".cache");
+            return;
+        }
+        if (oracle)
+        {
+            new LimitStudy(args[0], machine).run();
+            return;
+        }
+        if (sweepSpec != null)
+        {
+            new Sweep(sweepSpec, args[0]).run(sweepResults, (cacheFile != null) ? cacheFile : sweepResults + ".cache");
+            return;
+        }
+        if (cores != 0)
+        {
+            if (cores < 1 || contexts != 0 || gui || functional || recordFile != null || traceFile != null || sample != null ||
+                check || restoreFile != null || checkpointFile != null || latency || critical || framesFile != null)
+            {
+                System.out.println("-cores needs at least one core and can only be combined with -select, -prf and -output");
+                System.exit(1);
+            }
+            MulticoreSimulator multicore = new MulticoreSimulator(args[0], cores, machine);
+            multicore.setSelectionPolicy(policy);
+            if (prf != null)
+                multicore.enableRenaming(prf[0], prf[1]);
+            multicore.simulate();
+            return;
+        }
+        if (contexts != 0 && (gui || functional || recordFile != null || traceFile != null || sample != null ||
+            check || restoreFile != null || checkpointFile != null || framesFile != null))
+        {
+            System.out.println("-smt can only be combined with -select, -prf, -latency, -critical and -output");
+            System.exit(1);
+        }
+        if ((latency || critical) && (functional || recordFile != null || sample != null))
+        {
+            System.out.println("-latency and -critical need the status table of a detailed run and cannot be used with -functional, -record or -sample");
+            System.exit(1);
+        }
+        if (framesFile != null && (functional || recordFile != null || sample != null))
+        {
+            System.out.println("-frames records the cycles of a detailed run and cannot be used with -functional, -record or -sample");
+            System.exit(1);
+        }
+        if (sample != null && (gui || functional || recordFile != null || traceFile != null || check || prf != null ||
+            policy != SelectionPolicy.OLDEST_FIRST || restoreFile != null || checkpointFile != null))
+        {
+            System.out.println("-sample can only be combined with -machine and -output");
+            System.exit(1);
+        }
+        if (functional || recordFile != null)
+        {
+            FunctionalSimulator functionalSimulator = new FunctionalSimulator(args[0]);
+            if (recordFile != null)
+                functionalSimulator.setTrace(new TraceWriter(recordFile));
+            functionalSimulator.simulate();
+            return;
+        }
+        if (sample != null)
+        {
+            new SampledSimulator(args[0], sample[0], sample[1], sample[2], machine).simulate();
+            return;
+        }
+        if (check && restoreFile != null)
+        {
+            System.out.println("-check needs the initial program state and cannot be used with -restore");
+            System.exit(1);
+        }
+        if (traceFile != null && (check || restoreFile != null || checkpointFile != null))
+        {
+            System.out.println("-trace computes no values and cannot be used with -check, -checkpoint or -restore");
+            System.exit(1);
+        }
+        TS = new Simulator(args[0], gui, machine);
+        TS.setSelectionPolicy(policy);
+        if (contexts != 0)
+            TS.enableSMT(contexts, fetchPolicy);
+        if (prf != null)
+            TS.enableRenaming(prf[0], prf[1]);
+        if (check)
+            TS.enableLockstep();
+        if (traceFile != null)
+            TS.setTrace(traceFile);
+        if (latency)
+            TS.enableLatencyReport(latencyFile);
+        if (critical)
+            TS.enableCriticalPath();
+        if (framesFile != null)
+            TS.setFrameFile(framesFile);
+        if (restoreFile != null)
+            try
+            {
+                TS.restore(restoreFile);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error: could not restore checkpoint " + restoreFile + ": " + e.getMessage());
+                System.exit(1);
+            }
+        if (checkpointFile != null && architectural)
+            TS.setArchitecturalCheckpoint(checkpointCycle, checkpointFile);
+        else if (checkpointFile != null)
+            TS.setCheckpoint(checkpointCycle, checkpointFile);
         TS.simulate();
     }
 }
@@ -12,8 +12,17 @@ public class BranchUnit extends FunctionalUnit
 	 */
 	public BranchUnit()
 	{
-	    RScount = 1;
-	    executionCount = 9;
+		this(1, 9);
+	}
+	
+	/** BranchUnit constructor for a configured machine. Jumps always take a single cycle.
+	 *  @param stations - number of reservation stations, at most 64.
+	 *  @param latency - cycles a branch takes to execute.
+	 */
+	public BranchUnit(int stations, int latency)
+	{
+	    RScount = stations;
+	    executionCount = latency;
 	    RS = new Station[RScount];
 	    for (int i = 0; i < RScount; i++) 
 	    	RS[i] = new Station("Branch" + i);
@@ -31,41 +40,31 @@ public class BranchUnit extends FunctionalUnit
 	 */
 	public boolean insertInstruction(String operation, int rs, int rt, int imm, int limm)
 	{
+		int i = findFreeStation(0, RScount);
+		if (i == -1)
+			return true;
+		markBusy(i);
+		RS[i].operation = operation;
 		if (operation.equals("beq") || operation.equals("bne"))
 		{
-			for (int i = 0; i < RScount; i++)
-				if (!RS[i].busy)
-				{
-					RS[i].busy = true;
-					RS[i].operation = operation;
-					RS[i].A = Tools.signExtend(16, imm) * 4;
-					StatusTable.getInstance().addInstruction(operation + " r" + rt + " r" + rs + " " + RS[i].A, RS[i].name);
-					GPR generalRegs = GPR.getInstance();
-					if (generalRegs.isFree(rs))
-						RS[i].Vj = generalRegs.getRegister(rs);
-					else
-						RS[i].Qj = generalRegs.getResStation(rs);
-					if (generalRegs.isFree(rt))
-						RS[i].Vk = generalRegs.getRegister(rt);
-					else
-						RS[i].Qk = generalRegs.getResStation(rt);
-					return false;
-				}
+			RS[i].A = Tools.signExtend(16, imm) * 4;
+			StatusTable.getInstance().addInstruction(operation + " r" + rt + " r" + rs + " " + RS[i].A, RS[i].name);
+			GPR generalRegs = GPR.getInstance();
+			if (generalRegs.isFree(rs))
+				RS[i].Vj = generalRegs.getRegister(rs);
+			else
+				waitForJ(i, generalRegs.getResStation(rs));
+			if (generalRegs.isFree(rt))
+				RS[i].Vk = generalRegs.getRegister(rt);
+			else
+				waitForK(i, generalRegs.getResStation(rt));
 		}
 		else
 		{
-			for (int i = 0; i < RScount; i++)
-				if (!RS[i].busy)
-				{
-					StatusTable.getInstance().addInstruction(operation + " " + limm, RS[i].name);
-					RS[i].busy = true;
-					RS[i].operation = operation;
-					RS[i].A = limm * 4;
-					return false;
-				}
-			
+			StatusTable.getInstance().addInstruction(operation + " " + limm, RS[i].name);
+			RS[i].A = limm * 4;
 		}
-		return true;
+		return false;
 	}
 	
 	/** execute - if the functional unit is free and an instruction is available, execute it. 
@@ -73,6 +72,11 @@ public class BranchUnit extends FunctionalUnit
 	 */
 	public boolean execute()
 	{
+		if (unbounded)
+		{
+			executeUnbounded();
+			return false;
+		}
 		if (!FUbusy)
 		{
 			currentInstruction = findInstructionToExecute();
@@ -94,13 +98,22 @@ public class BranchUnit extends FunctionalUnit
 			{
 		        StatusTable.getInstance().updateEndEX(this.RS[this.currentInstruction].name);
 		        FUbusy = false;
-		        RS[currentInstruction].resultReady = true;
+		        markResultReady(currentInstruction);
 			}
 			return true;
 		}
 		return !finished();
 	}
 	
+	/** latencyOf - jumps take a single cycle after they start, as in execute.
+	 *  @param station - index of the reservation station.
+	 *  @return cycles the branch or jump takes.
+	 */
+	int latencyOf(int station)
+	{
+		return RS[station].operation.equals("j") ? 2 : executionCount;
+	}
+	
 	/** write - the branch unit does not write it's results to the CDB, rather it updates the PC
 	 *    if the branch of jump is determined to be taken.
 	 *  @return null
@@ -111,35 +124,42 @@ public class BranchUnit extends FunctionalUnit
 		if (instr != -1)
 		{
 			StatusTable.getInstance().updateWrite(RS[instr].name);
+			// Driven by a trace, the next PC comes from the trace
+			if (!computeValues)
+			{
+				markWritten(instr);
+				return null;
+			}
+			int context = RS[instr].context;
 			int offset = (int) RS[instr].A;
 			long op1 = RS[instr].Vj;
 			long op2 = RS[instr].Vk;
 			int address;
 			if (RS[instr].operation.equals("beq"))
 			{
-			      address = Simulator.getPC() + offset;
+			      address = Simulator.getPC(context) + offset;
 			      if (op1 == op2)
 			      {
 			    	  RS[instr].result = -1L; 
-			    	  Simulator.setPC(address);
+			    	  Simulator.setPC(context, address);
 			      }
 			}
 			else if (RS[instr].operation.equals("bne"))
 			{
-				address = Simulator.getPC() + offset;
+				address = Simulator.getPC(context) + offset;
 			    if (op1 != op2)
 			    {
 			    	RS[instr].result = -1L; 
-			    	Simulator.setPC(address);
+			    	Simulator.setPC(context, address);
 			    }
 			}
 			else if (RS[instr].operation.equals("j"))
 			{
 				address = offset;
 				RS[instr].result = -1L;
-				Simulator.setPC(address);
+				Simulator.setPC(context, address);
 			}
-			RS[instr].resultWritten = true;
+			markWritten(instr);
 		}
 		return null;
 	}
@@ -13,8 +13,17 @@ public class FPAdder extends FunctionalUnit
 	 */
 	public FPAdder()
 	{
-		executionCount = 13;
-		RScount = 4;
+		this(4, 13);
+	}
+	
+	/** Constructor for a configured machine.
+	 *  @param stations - number of reservation stations, at most 64.
+	 *  @param latency - cycles an instruction takes to execute.
+	 */
+	public FPAdder(int stations, int latency)
+	{
+		executionCount = latency;
+		RScount = stations;
 		RS = new Station[RScount];
 	    for (int i = 0; i < RScount; i++) 
 	    	RS[i] = new Station("FPAdd" + i);
@@ -33,26 +42,22 @@ public class FPAdder extends FunctionalUnit
 	{
 		// Order of params: rd rs rt
 		FPR floatingRegs = FPR.getInstance();
-	    for (int i = 0; i < RScount; i++)
-	    {
-	    	if (!RS[i].busy)
-	    	{
-	    		StatusTable.getInstance().addInstruction(operation + " f" + dest + " f" + op1 + " f" + op2, RS[i].name);
-	    		RS[i].busy = true;
-	    		RS[i].operation = operation;
-	    		if (floatingRegs.isFree(op1))
-	    			RS[i].Vj = floatingRegs.getRegister(op1);
-	    		else 
-	    			RS[i].Qj = floatingRegs.getResStation(op1);
-	    		if (floatingRegs.isFree(op2))
-	    			RS[i].Vk = floatingRegs.getRegister(op2);
-	    		else 
-	    			RS[i].Qk = floatingRegs.getResStation(op2);
-	    		floatingRegs.setResStation(dest, "FPAdd" + i);
-	    		return false;
-	    	}
-	    }
-	    return true;
+	    int i = findFreeStation(0, RScount);
+	    if (i == -1)
+	    	return true;
+	    StatusTable.getInstance().addInstruction(operation + " f" + dest + " f" + op1 + " f" + op2, RS[i].name);
+	    markBusy(i);
+	    RS[i].operation = operation;
+	    if (floatingRegs.isFree(op1))
+	    	RS[i].Vj = floatingRegs.getRegister(op1);
+	    else 
+	    	waitForJ(i, floatingRegs.getResStation(op1));
+	    if (floatingRegs.isFree(op2))
+	    	RS[i].Vk = floatingRegs.getRegister(op2);
+	    else 
+	    	waitForK(i, floatingRegs.getResStation(op2));
+	    RS[i].tag = floatingRegs.setResStation(dest, RS[i].id);
+	    return false;
 	}
 
 	/** computeResult - given the reservation station, fetch operands and perform
@@ -76,7 +81,7 @@ public class FPAdder extends FunctionalUnit
 	 */
 	public void dump()
 	{
-		System.out.println("FP Adder Reservation Stations");
+		Output.getInstance().println("FP Adder Reservation Stations");
 		super.dump();
 	}  
 }
@@ -1,8 +1,14 @@
 package functionalUnits;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import simulator.CDB;
+import simulator.Output;
 import simulator.Station;
 import simulator.StatusTable;
+import simulator.Tags;
 
 /** 
  * @author Michael Kepple
@@ -16,20 +22,201 @@ public abstract class FunctionalUnit
 	int currentInstruction; //index into the RS array identifying current instruction being executed
 	boolean FUbusy; //flag indicating whether the functional unit is currently executing an instruction
 	int executionCycles; //number of execution cycles remaining for currently executing instruction
+	// producing tag -> bitmask of this unit's stations waiting on it for Vj, and for Vk
+	long[] waitingJ = new long[0];
+	long[] waitingK = new long[0];
+	// one bit per reservation station, kept in step with the Station flags on every transition
+	long busyMask; //stations holding an instruction
+	long waitingMask; //stations with an operand still to come from the CDB
+	long readyMask; //stations whose operands are all available and have not executed
+	long resultReadyMask; //stations whose result has been calculated
+	long writtenMask; //stations whose result has been written
+	// age matrix: bit j of olderThan[i] is set if station j was issued before station i and is still busy
+	long[] olderThan = new long[64];
+	SelectionPolicy policy = SelectionPolicy.OLDEST_FIRST;
+	boolean computeValues = true; //false when driven by a trace, where only timing is simulated
+	int context; //hardware context whose instructions are being inserted, 0 unless SMT
+	boolean unbounded; //every station executes on a copy of the unit of its own, for limit studies
+	long executingMask; //stations executing when unbounded
+	int[] remaining; //execution cycles left for each executing station when unbounded
 
 	/** findInstructionToExecute - looks through the reservation stations for one with a ready value of true 
-	 *    and returns the index. Uses ready function from Station class. 
+	 *    and returns the index. Under OLDEST_FIRST this is the ready station with no older ready station,
+	 *    under INDEX_ORDER the lowest numbered one.
 	 *  @return index of reservation station ready. 
 	 */
 	int findInstructionToExecute()
 	{
-		for (int i = 0; i < RScount; i++)
-	    {
-			if (RS[i].ready()) 
-				return i;
-	    }
 		// if no instructions in this FU's reservations stations are ready yet.
-	    return -1;
+		if (readyMask == 0)
+			return -1;
+		if (policy == SelectionPolicy.INDEX_ORDER)
+			return Long.numberOfTrailingZeros(readyMask);
+		for (long mask = readyMask; mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			if ((olderThan[i] & readyMask) == 0)
+				return i;
+		}
+		return -1;
+	}
+	
+	/** setComputeValues - turns the computation of results, memory accesses and branch outcomes on or
+	 *    off. Off for trace-driven simulation, where the trace supplies addresses and control flow.
+	 *  @param computeValues - false to simulate timing only.
+	 */
+	public void setComputeValues(boolean computeValues)
+	{
+		this.computeValues = computeValues;
+	}
+	
+	/** setContext - sets the hardware context that the instructions inserted from now on belong to.
+	 *  @param context - number of the context.
+	 */
+	public void setContext(int context)
+	{
+		this.context = context;
+	}
+	
+	/** inFlight - counts the reservation stations holding instructions of a hardware context.
+	 *  @param context - number of the context.
+	 *  @return number of busy stations issued by the context.
+	 */
+	public int inFlight(int context)
+	{
+		int count = 0;
+		for (long mask = busyMask; mask != 0; mask &= mask - 1)
+			if (RS[Long.numberOfTrailingZeros(mask)].context == context)
+				count++;
+		return count;
+	}
+	
+	/** getStationCount - number of reservation stations of the functional unit.
+	 *  @return RScount.
+	 */
+	public int getStationCount()
+	{
+		return RScount;
+	}
+	
+	/** getStations - reservation stations of the functional unit, for the GUI.
+	 *  @return RS.
+	 */
+	public Station[] getStations()
+	{
+		return RS;
+	}
+	
+	/** getLatency - execution cycles an instruction takes on the functional unit.
+	 *  @return executionCount.
+	 */
+	public int getLatency()
+	{
+		return executionCount;
+	}
+	
+	/** getCurrentInstruction - station whose instruction is executing.
+	 *  @return index into RS, -1 if none.
+	 */
+	public int getCurrentInstruction()
+	{
+		return currentInstruction;
+	}
+	
+	/** isBusy - whether the functional unit is executing an instruction.
+	 *  @return FUbusy.
+	 */
+	public boolean isBusy()
+	{
+		return FUbusy;
+	}
+	
+	/** getExecutionCycles - execution cycles left for the executing instruction.
+	 *  @return executionCycles.
+	 */
+	public int getExecutionCycles()
+	{
+		return executionCycles;
+	}
+	
+	/** number - gives every reservation station its tag among the tags of the simulator.
+	 *  @param tags - tags shared by the functional units and register files of the simulator.
+	 */
+	public void number(Tags tags)
+	{
+		for (Station station : RS)
+			station.number(tags);
+	}
+	
+	/** getStation - finds a reservation station of the functional unit by name.
+	 *  @param name - name of the station.
+	 *  @return the station, or null if the unit has none of that name.
+	 */
+	public Station getStation(String name)
+	{
+		for (int i = 0; i < RScount; i++)
+			if (RS[i].name.equals(name))
+				return RS[i];
+		return null;
+	}
+	
+	/** setSelectionPolicy - chooses how a ready reservation station is picked for execution.
+	 *  @param policy - OLDEST_FIRST or INDEX_ORDER.
+	 */
+	public void setSelectionPolicy(SelectionPolicy policy)
+	{
+		this.policy = policy;
+	}
+	
+	/** findFreeStation - finds the lowest numbered reservation station in a range that is not busy.
+	 *  @param first - index of the first station to consider.
+	 *  @param last - index one past the last station to consider.
+	 *  @return index of a free station, or -1 if all in the range are busy.
+	 */
+	int findFreeStation(int first, int last)
+	{
+		long range = (last == 64 ? -1L : (1L << last) - 1) & (-1L << first);
+		long free = ~busyMask & range;
+		if (free == 0)
+			return -1;
+		return Long.numberOfTrailingZeros(free);
+	}
+	
+	/** markBusy - allocates a reservation station to a newly issued instruction.
+	 *  @param station - index of the reservation station.
+	 */
+	void markBusy(int station)
+	{
+		RS[station].busy = true;
+		RS[station].context = context;
+		olderThan[station] = busyMask;
+		busyMask |= 1L << station;
+		updateReady();
+	}
+	
+	/** markResultReady - records that the instruction in a station has finished executing.
+	 *  @param station - index of the reservation station.
+	 */
+	void markResultReady(int station)
+	{
+		RS[station].resultReady = true;
+		resultReadyMask |= 1L << station;
+		updateReady();
+	}
+	
+	/** markWritten - records that the result of a station has been written.
+	 *  @param station - index of the reservation station.
+	 */
+	void markWritten(int station)
+	{
+		RS[station].resultWritten = true;
+		writtenMask |= 1L << station;
+	}
+	
+	// the masks form of Station.ready()
+	private void updateReady()
+	{
+		readyMask = busyMask & ~waitingMask & ~resultReadyMask;
 	}
 	
 	/** execute - if functional unit is available, execute the next available instruction from the 
@@ -38,6 +225,11 @@ public abstract class FunctionalUnit
 	 */   
 	public boolean execute()
 	{
+		if (unbounded)
+		{
+			executeUnbounded();
+			return false;
+		}
 		if (!FUbusy)
 	    {
 			currentInstruction = findInstructionToExecute();
@@ -56,37 +248,177 @@ public abstract class FunctionalUnit
 	    	if (executionCycles == 0)
 	    	{
 	    		FUbusy = false;
-	    		RS[currentInstruction].resultReady = true;
-	    		computeResult(currentInstruction);
+	    		markResultReady(currentInstruction);
+	    		if (computeValues)
+	    			computeResult(currentInstruction);
 	    		StatusTable.getInstance().updateEndEX(RS[currentInstruction].name);
 	    	}
 	    }
 		return false;
 	}
 	
+	/** setUnbounded - gives every reservation station a copy of the unit of its own, so that each
+	 *    instruction starts executing as soon as its operands are ready.
+	 *  @param unbounded - true for the oracle limit study.
+	 */
+	public void setUnbounded(boolean unbounded)
+	{
+		this.unbounded = unbounded;
+		remaining = new int[RScount];
+	}
+	
+	/** executeUnbounded - execute stage with a copy of the unit per station: advances every executing
+	 *    station, finishing those whose latency is up, then starts every ready station allowed to start.
+	 */
+	void executeUnbounded()
+	{
+		for (long mask = executingMask; mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			if (--remaining[i] == 0)
+			{
+				executingMask &= ~(1L << i);
+				finishExecution(i);
+			}
+		}
+		for (long mask = readyMask & ~executingMask & startable(); mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			executingMask |= 1L << i;
+			remaining[i] = latencyOf(i) - 1;
+			startExecution(i);
+		}
+	}
+	
+	/** startable - the stations allowed to start executing when their operands are ready.
+	 *  @return bitmask of stations, all of them unless a subclass orders execution.
+	 */
+	long startable()
+	{
+		return -1L;
+	}
+	
+	/** latencyOf - cycles the instruction in a station takes to execute.
+	 *  @param station - index of the reservation station.
+	 *  @return the latency of the unit.
+	 */
+	int latencyOf(int station)
+	{
+		return executionCount;
+	}
+	
+	/** startExecution - records that a station has started executing.
+	 *  @param station - index of the reservation station.
+	 */
+	void startExecution(int station)
+	{
+		StatusTable.getInstance().updateStartEX(RS[station].name);
+	}
+	
+	/** finishExecution - records that a station has finished executing and computes its result.
+	 *  @param station - index of the reservation station.
+	 */
+	void finishExecution(int station)
+	{
+		markResultReady(station);
+		if (computeValues)
+			computeResult(station);
+		StatusTable.getInstance().updateEndEX(RS[station].name);
+	}
+	
 	/** updateReservationStations - called from main Simulator loop, updates any reservation stations
-	 *    that were waiting on results.
+	 *    that were waiting on results. Only the stations recorded as waiting on the broadcast
+	 *    tag at issue are touched.
 	 *  @param cdb - Common Data Bus
 	 */
 	public void updateReservationStations(CDB cdb)
 	{
+		int tag = cdb.tag;
+		if (tag >= waitingJ.length || (waitingJ[tag] | waitingK[tag]) == 0)
+			return;
+		long waitJ = waitingJ[tag];
+		long waitK = waitingK[tag];
+		waitingJ[tag] = waitingK[tag] = 0;
+		// Since we now have result, clear corresponding Q field and fill V value.
+		for (long mask = waitJ; mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			RS[i].Qj = Tags.NONE;
+			RS[i].Vj = cdb.result;
+		}
+		for (long mask = waitK; mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			RS[i].Qk = Tags.NONE;
+			RS[i].Vk = cdb.result;
+		}
+		for (long mask = waitJ | waitK; mask != 0; mask &= mask - 1)
+		{
+			int i = Long.numberOfTrailingZeros(mask);
+			if (RS[i].Qj == Tags.NONE && RS[i].Qk == Tags.NONE)
+				waitingMask &= ~(1L << i);
+		}
+		updateReady();
+	}
+	
+	/** waitForJ - marks the first operand of a station as coming from another station, and records
+	 *    the station in the wakeup index for that producer.
+	 *  @param station - index of the waiting reservation station.
+	 *  @param producer - tag of the reservation station or physical register producing the operand.
+	 */
+	void waitForJ(int station, int producer)
+	{
+		RS[station].Qj = producer;
+		reserveWaiters(producer);
+		waitingJ[producer] |= 1L << station;
+		waitingMask |= 1L << station;
+		updateReady();
+	}
+	
+	/** waitForK - as waitForJ, for the second operand.
+	 *  @param station - index of the waiting reservation station.
+	 *  @param producer - tag of the reservation station or physical register producing the operand.
+	 */
+	void waitForK(int station, int producer)
+	{
+		RS[station].Qk = producer;
+		reserveWaiters(producer);
+		waitingK[producer] |= 1L << station;
+		waitingMask |= 1L << station;
+		updateReady();
+	}
+	
+	// grows the wakeup index to cover a tag, since renaming adds tags after the units are built
+	private void reserveWaiters(int producer)
+	{
+		if (producer < waitingJ.length)
+			return;
+		int size = Math.max(2 * waitingJ.length, producer + 1);
+		waitingJ = Arrays.copyOf(waitingJ, size);
+		waitingK = Arrays.copyOf(waitingK, size);
+	}
+	
+	/** rebuildState - reconstructs the wakeup index and the station bitmasks from the fields of the stations.
+	 */
+	void rebuildState()
+	{
+		Arrays.fill(waitingJ, 0);
+		Arrays.fill(waitingK, 0);
+		busyMask = waitingMask = resultReadyMask = writtenMask = 0;
 		for (int i = 0; i < RScount; i++)
 		{
 			if (RS[i].busy)
-			{
-				// Since we now have result, null corresponding Q field and fill V value.
-				if (cdb.station.equals(RS[i].Qj))
-				{
-					RS[i].Qj = null;
-					RS[i].Vj = cdb.result;
-				}
-				else if (cdb.station.equals(RS[i].Qk))
-				{
-					RS[i].Qk = null;
-					RS[i].Vk = cdb.result;
-				}
-			}
+				busyMask |= 1L << i;
+			if (RS[i].resultReady)
+				resultReadyMask |= 1L << i;
+			if (RS[i].resultWritten)
+				writtenMask |= 1L << i;
+			if (RS[i].Qj != Tags.NONE)
+				waitForJ(i, RS[i].Qj);
+			if (RS[i].Qk != Tags.NONE)
+				waitForK(i, RS[i].Qk);
 		}
+		updateReady();
 	}
 	
 	/** findIntructionToWrite - looks for a reservation station with a resultReady of true.
@@ -94,12 +426,10 @@ public abstract class FunctionalUnit
 	 */
 	int findInstructionToWrite()
 	{
-		for (int i = 0; i < RScount; i++)
-	    {
-			if (RS[i].resultReady)
-				return i;
-	    }
-	    return -1;
+		long unwritten = resultReadyMask & ~writtenMask;
+		if (unwritten == 0)
+			return -1;
+		return Long.numberOfTrailingZeros(unwritten);
 	}
 	
 	/** write - if an instruction in one of the reservation stations has it's result, create a CDB
@@ -117,12 +447,21 @@ public abstract class FunctionalUnit
 	    	CDB push = new CDB();
 	    	push.result = RS[ready].result;
 	    	push.station = RS[ready].name;
-	    	RS[ready].resultWritten = true;
+	    	push.tag = RS[ready].tag;
+	    	markWritten(ready);
 	    	return push;
 	    }
 	    return null;
 	}
 	
+	/** hasResultToWrite - whether a finished result is waiting to be written.
+	 *  @return true if write would put a result on the CDB this cycle.
+	 */
+	public boolean hasResultToWrite()
+	{
+		return findInstructionToWrite() != -1;
+	}
+	
 	/** dump - calls helpful header-creator function in Station then dumps all the contents of reservation
 	 *    station associated with the functional unit.
 	 */
@@ -131,7 +470,7 @@ public abstract class FunctionalUnit
 		Station.dumpHeader();
 		for (Station stat: RS)
 			stat.dump();
-		System.out.println();
+		Output.getInstance().println();
 	}
 	
 	/** clear - if any reservation stations in this functional unit have finished writing their results, boot them
@@ -139,11 +478,15 @@ public abstract class FunctionalUnit
 	 */
 	public void clear()
 	{
-		for (int i = 0; i < RScount; i++)
-		{
-			if (RS[i].resultWritten) 
-				RS[i].clear();
-		}
+		for (long mask = writtenMask; mask != 0; mask &= mask - 1)
+			RS[Long.numberOfTrailingZeros(mask)].clear();
+		busyMask &= ~writtenMask;
+		for (long mask = busyMask; mask != 0; mask &= mask - 1)
+			olderThan[Long.numberOfTrailingZeros(mask)] &= ~writtenMask;
+		waitingMask &= ~writtenMask;
+		resultReadyMask &= ~writtenMask;
+		writtenMask = 0;
+		updateReady();
 	}
 	
 	/** finished - check if all reservation stations in this functional unit are cleared.
@@ -151,12 +494,46 @@ public abstract class FunctionalUnit
 	 */
 	public boolean finished()
 	{
+		return busyMask == 0;
+	}
+	
+	/** save - writes the execution state of the functional unit and each of its reservation stations
+	 *    to a checkpoint.
+	 *  @param out - checkpoint stream
+	 *  @throws IOException
+	 */
+	public void save(DataOutputStream out) throws IOException
+	{
+		out.writeInt(RScount);
+		out.writeInt(currentInstruction);
+		out.writeBoolean(FUbusy);
+		out.writeInt(executionCycles);
+		for (int i = 0; i < RScount; i++)
+		{
+			RS[i].save(out);
+			out.writeLong(olderThan[i]);
+		}
+	}
+	
+	/** restore - reloads the state written by save. The checkpoint must have been taken from a unit
+	 *    with the same number of reservation stations.
+	 *  @param in - checkpoint stream
+	 *  @throws IOException
+	 */
+	public void restore(DataInputStream in) throws IOException
+	{
+		if (in.readInt() != RScount)
+			throw new IOException("checkpoint reservation station count does not match " + RS[0].name +
+				", so it was taken on another machine; only an architectural checkpoint can change the machine");
+		currentInstruction = in.readInt();
+		FUbusy = in.readBoolean();
+		executionCycles = in.readInt();
 		for (int i = 0; i < RScount; i++)
 		{
-			if (RS[i].busy == true)
-				return false;
+			RS[i].restore(in);
+			olderThan[i] = in.readLong();
 		}
-		return true;
+		rebuildState();
 	}
 	
 	/** computeResult - abstract method to be implemented by the specific functional units.
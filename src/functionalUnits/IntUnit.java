@@ -13,8 +13,17 @@ public class IntUnit extends FunctionalUnit
 	 */
 	public IntUnit()
 	{
-		executionCount = 7;
-		RScount = 4;
+		this(4, 7);
+	}
+	
+	/** Constructor for a configured machine.
+	 *  @param stations - number of reservation stations, at most 64.
+	 *  @param latency - cycles an instruction takes to execute.
+	 */
+	public IntUnit(int stations, int latency)
+	{
+		executionCount = latency;
+		RScount = stations;
 		RS = new Station[RScount];
 	    for (int i = 0; i < RScount; i++) 
 	    	RS[i] = new Station("Integer" + i);
@@ -53,29 +62,25 @@ public class IntUnit extends FunctionalUnit
 	public boolean insertInstruction(String operation, int dest, int op1, int op2)
 	{
 		GPR generalRegs = GPR.getInstance();
-		for (int i = 0; i < RScount; i++)
-		{
-			if (!RS[i].busy)
-			{
-				RS[i].busy = true;
-		        RS[i].operation = operation;
-				// If operand is ready in register, grab it
-				if (generalRegs.isFree(op1))
-					RS[i].Vj = generalRegs.getRegister(op1);
-				else
-					RS[i].Qj = generalRegs.getResStation(op1);
-				if (generalRegs.isFree(op2))
-					RS[i].Vk = generalRegs.getRegister(op2);
-				else
-					RS[i].Qk = generalRegs.getResStation(op2);
-				// Note that the output of this instruction is headed to dest register
-		        generalRegs.setResStation(dest, "Integer" + i);
-				// Update status table
-				StatusTable.getInstance().addInstruction(operation + " r" + dest + " r" + op1 + " r" + op2, RS[i].name);
-				return false;
-			}
-		}
-		return true;
+		int i = findFreeStation(0, RScount);
+		if (i == -1)
+			return true;
+		markBusy(i);
+        RS[i].operation = operation;
+		// If operand is ready in register, grab it
+		if (generalRegs.isFree(op1))
+			RS[i].Vj = generalRegs.getRegister(op1);
+		else
+			waitForJ(i, generalRegs.getResStation(op1));
+		if (generalRegs.isFree(op2))
+			RS[i].Vk = generalRegs.getRegister(op2);
+		else
+			waitForK(i, generalRegs.getResStation(op2));
+		// Note that the output of this instruction is headed to dest register
+        RS[i].tag = generalRegs.setResStation(dest, RS[i].id);
+		// Update status table
+		StatusTable.getInstance().addInstruction(operation + " r" + dest + " r" + op1 + " r" + op2, RS[i].name);
+		return false;
 	}
 	
 	/** insertImmInstr - inserts immediate Integer I-type instruction into reservation station is spot available;
@@ -89,40 +94,33 @@ public class IntUnit extends FunctionalUnit
 	public boolean insertImmInstr(String operation, int rs, int rt, int imm)
 	{
 		GPR generalRegs = GPR.getInstance();
-	    for (int i = 0; i < RScount; i++)
-	    {
-	    	if (!RS[i].busy)
-	    	{
-	    		// Getting here
-	    		RS[i].busy = true;
-	    		RS[i].operation = operation;
-	    		long ext = imm;
-	    		// Sign extend immediate value to long if signed add
-	    		// Bit is not zero-based.
-	    		if (operation.equals("daddi"))
-	    			ext = Tools.signExtend(16, ext);
-	    		//System.out.println("Ext: " + ext);
-	    		StatusTable.getInstance().addInstruction(operation + " r" + rt + " r" + rs + " " + ext, RS[i].name);
-	    		RS[i].A = ext;
-	    		// Check if other operand is available
-	    		if (generalRegs.isFree(rs))
-	    			RS[i].Vj = generalRegs.getRegister(rs);
-	    		else
-	    			RS[i].Qj = generalRegs.getResStation(rs);
-	    		// Must set res stations AFTER checking for register availability
-	    		generalRegs.setResStation(rt, ("Integer" + i));
-	    		// Update status table
-	    		return false;
-	    	}
-	    }
-	    return true;
+	    int i = findFreeStation(0, RScount);
+	    if (i == -1)
+	    	return true;
+	    markBusy(i);
+	    RS[i].operation = operation;
+	    long ext = imm;
+	    // Sign extend immediate value to long if signed add
+	    // Bit is not zero-based.
+	    if (operation.equals("daddi"))
+	    	ext = Tools.signExtend(16, ext);
+	    StatusTable.getInstance().addInstruction(operation + " r" + rt + " r" + rs + " " + ext, RS[i].name);
+	    RS[i].A = ext;
+	    // Check if other operand is available
+	    if (generalRegs.isFree(rs))
+	    	RS[i].Vj = generalRegs.getRegister(rs);
+	    else
+	    	waitForJ(i, generalRegs.getResStation(rs));
+	    // Must set res stations AFTER checking for register availability
+	    RS[i].tag = generalRegs.setResStation(rt, RS[i].id);
+	    return false;
 	}
 	
 	/** dump - prints message specifying which Functional Units is dumping, calls Superclass' dump method.
 	 */
 	public void dump()
 	{
-		System.out.println("Integer Reservation Stations:");
+		Output.getInstance().println("Integer Reservation Stations:");
 		super.dump();
 	}
 	
@@ -1,5 +1,10 @@
 package functionalUnits;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
 import simulator.*;
 
 /** 
@@ -8,27 +13,39 @@ import simulator.*;
  */
 public class MemUnit extends FunctionalUnit
 {
-	ArrayDeque<Station> executionQueue;
-	ArrayDeque<Station> writeQueue;
+	ArrayDeque<Integer> executionQueue; //indices of issued loads and stores in issue order
+	ArrayDeque<Integer> writeQueue; //indices of executed loads and stores in completion order
 	int loadIndex;
 	int storeIndex;
+	LockstepChecker checker; // compares stores against a golden model when set
+	long traceAddress; // effective address of the next load or store, when driven by a trace
 	
 	/** MemUnit constructor - Loads and stores are handles by the same memory unit and are executed in the order in which they
 	 *   are issued.
 	*/
 	public MemUnit()
 	{
-		RScount = 8;
+		this(4, 4, 11);
+	}
+	
+	/** MemUnit constructor for a configured machine.
+	 *  @param loads - number of load buffers.
+	 *  @param stores - number of store buffers, at most 64 buffers in all.
+	 *  @param latency - cycles a load or store takes to execute.
+	 */
+	public MemUnit(int loads, int stores, int latency)
+	{
+		RScount = loads + stores;
 		loadIndex = 0;
-		storeIndex = 4;
-	    executionCount = 11;
+		storeIndex = loads;
+	    executionCount = latency;
 	    RS = new Station[RScount];
-	    executionQueue = new ArrayDeque<Station>();
-	    writeQueue = new ArrayDeque<Station>();
+	    executionQueue = new ArrayDeque<Integer>();
+	    writeQueue = new ArrayDeque<Integer>();
 	    for (int i = 0; i < storeIndex; i++)
 	    	RS[i] = new Station("Load"+i);
 	    for (int i = storeIndex; i < RScount; i++)
-	    	RS[i] = new Station("Store"+(i-4));
+	    	RS[i] = new Station("Store"+(i-storeIndex));
 	}
 	
 	/** insertInstruction - inserts a load or store instruction into appropriate reservation stations. Also
@@ -44,59 +61,113 @@ public class MemUnit extends FunctionalUnit
 		GPR generalRegs = GPR.getInstance();
 		FPR floatingRegs = FPR.getInstance();
 		if ((operation.equals("l.d")) || (operation.equals("ld")))
-		    for (int i = 0; i < storeIndex; i++)
-		    	if (!RS[i].busy)
-		    	{
-		    		RS[i].busy = true;
-		    		RS[i].operation = operation;
-		    		RS[i].A = imm;	
-		    		if (generalRegs.isFree(rs))
-		    			RS[i].Vj = generalRegs.getRegister(rs);
-		    		else
-		    			RS[i].Qj = generalRegs.getResStation(rs);
-		    		if (operation.equals("l.d"))
-		    			floatingRegs.setResStation(rt, "Load"+i);
-		    		else
-		    			generalRegs.setResStation(rt, "Load"+i);
-		    		StatusTable.getInstance().addInstruction(operation + ((operation.equals("ld")) ? " r" : " f") + rt + " " + imm + " r" + rs, RS[i].name);
-		    		executionQueue.add(RS[i]);
-		    		return false;
-		      }
+		{
+			int i = findFreeStation(0, storeIndex);
+			if (i == -1)
+				return true;
+			markBusy(i);
+			RS[i].operation = operation;
+			RS[i].A = computeValues ? imm : traceAddress;
+			if (generalRegs.isFree(rs))
+				RS[i].Vj = generalRegs.getRegister(rs);
+			else
+				waitForJ(i, generalRegs.getResStation(rs));
+			if (operation.equals("l.d"))
+				RS[i].tag = floatingRegs.setResStation(rt, RS[i].id);
+			else
+				RS[i].tag = generalRegs.setResStation(rt, RS[i].id);
+			StatusTable.getInstance().addInstruction(operation + ((operation.equals("ld")) ? " r" : " f") + rt + " " + imm + " r" + rs, RS[i].name);
+			executionQueue.add(i);
+			return false;
+		}
 		if ((operation.equals("s.d")) || (operation.equals("sd"))) 
-			for (int i = storeIndex; i < RScount; i++)
-				if (!RS[i].busy)
-	            {
-					RS[i].busy = true;
-					RS[i].operation = operation;
-					RS[i].A = imm;
-					if (generalRegs.isFree(rs))
-						RS[i].Vj = generalRegs.getRegister(rs);
-					else
-						RS[i].Qj = generalRegs.getResStation(rs);
-					Registers storing = ((operation.equals("s.d") ? floatingRegs : generalRegs));
-					if (storing.isFree(rt))
-						RS[i].Vk = storing.getRegister(rt);
-					else
-						RS[i].Qk = storing.getResStation(rt);
-					executionQueue.add(RS[i]);
-					StatusTable.getInstance().addInstruction(operation + ((operation.equals("sd")) ? " r" : " f") + rt + " " + imm + " r" + rs, RS[i].name);
-					return false;
-	            }
+		{
+			int i = findFreeStation(storeIndex, RScount);
+			if (i == -1)
+				return true;
+			markBusy(i);
+			RS[i].operation = operation;
+			RS[i].A = computeValues ? imm : traceAddress;
+			if (generalRegs.isFree(rs))
+				RS[i].Vj = generalRegs.getRegister(rs);
+			else
+				waitForJ(i, generalRegs.getResStation(rs));
+			Registers storing = ((operation.equals("s.d") ? floatingRegs : generalRegs));
+			if (storing.isFree(rt))
+				RS[i].Vk = storing.getRegister(rt);
+			else
+				waitForK(i, storing.getResStation(rt));
+			executionQueue.add(i);
+			StatusTable.getInstance().addInstruction(operation + ((operation.equals("sd")) ? " r" : " f") + rt + " " + imm + " r" + rs, RS[i].name);
+			return false;
+		}
 		return true;
 	}
 	
-	/** get NextInstr - according to issue order, returns the next Station ready to be executed or null if none
-	 *    are currently ready.
-	 * @return - next station, or null.
+	/** get NextInstr - according to issue order, returns the index of the next Station ready to be executed
+	 *    or -1 if none are currently ready. The loads and stores of a hardware context execute in the
+	 *    order they were issued. Under SMT, one may pass an older load or store of another context,
+	 *    unless one of the two is a store and their addresses are the same or not known yet.
+	 * @return - next station index, or -1.
 	 */
-	Station getNextInstr()
+	int getNextInstr()
 	{
-		if (executionQueue.size() == 0)
-			return null;
-		Station next = executionQueue.peek();
-		if (next.ready())
-			return next;
-		return null;
+		int waiting = 0; //contexts with an older load or store still to execute
+		for (int next : executionQueue)
+		{
+			int context = 1 << RS[next].context;
+			if ((waiting & context) == 0 && (readyMask & (1L << next)) != 0 && !conflicts(next))
+				return next;
+			waiting |= context;
+		}
+		return -1;
+	}
+	
+	// whether a ready load or store must wait for an older one of another context to the same address
+	private boolean conflicts(int station)
+	{
+		long address = address(station);
+		for (int older : executionQueue)
+		{
+			if (older == station)
+				return false;
+			if (station < storeIndex && older < storeIndex)
+				continue;
+			if ((computeValues && RS[older].Qj != Tags.NONE) || address(older) == address)
+				return true;
+		}
+		return false;
+	}
+	
+	// effective address of a load or store that has not started, once its base register is known
+	private long address(int station)
+	{
+		return computeValues ? RS[station].Vj + RS[station].A : RS[station].A;
+	}
+	
+	/** orderingBlocked - whether execution is held up only by issue order: the unit is idle and
+	 *    every ready load or store waits behind an older one that is not ready.
+	 *  @return true if a younger load or store could execute but may not.
+	 */
+	public boolean orderingBlocked()
+	{
+		if (FUbusy || getNextInstr() != -1)
+			return false;
+		long queued = 0;
+		for (int station : executionQueue)
+			queued |= 1L << station;
+		return (readyMask & queued) != 0;
+	}
+	
+	/** hasResultToWrite - a load is waiting in the write queue. Stores do not use the CDB.
+	 *  @return true if a load result is waiting to be written.
+	 */
+	public boolean hasResultToWrite()
+	{
+		for (int station : writeQueue)
+			if (station < storeIndex)
+				return true;
+		return false;
 	}
 	
 	/** execute - if the functional unit is available and a valid instruction is waiting in the
@@ -106,14 +177,22 @@ public class MemUnit extends FunctionalUnit
 	public boolean execute()
 	{
 		Station execute;
+		if (unbounded)
+		{
+			executeUnbounded();
+			return false;
+		}
 		if (!FUbusy)
 		{
-			execute = getNextInstr();
-			if (execute != null)
+			int next = getNextInstr();
+			if (next != -1)
 			{
+				execute = RS[next];
 				FUbusy = true;
-				// Calculate base + offset
-				execute.A = execute.Vj + execute.A;
+				currentInstruction = next;
+				// Calculate base + offset, already known from a trace
+				if (computeValues)
+					execute.A = execute.Vj + execute.A;
 				StatusTable.getInstance().updateStartEX(execute.name);
 				executionCycles = (executionCount-1);
 			}
@@ -121,19 +200,69 @@ public class MemUnit extends FunctionalUnit
 		else
 		{
 			executionCycles--;
-			execute = executionQueue.peek();
+			int current = currentInstruction;
+			execute = RS[current];
 			if (executionCycles == 0)
 			{
 				FUbusy = false;
-				execute.resultReady = true;
-				executionQueue.remove();
-				writeQueue.add(execute);
+				markResultReady(current);
+				executionQueue.remove(Integer.valueOf(current));
+				writeQueue.add(current);
 				StatusTable.getInstance().updateEndEX(execute.name);
 			}
 		}
 		return false;
 	}
 	
+	/** startable - with a copy of the unit per station, a load may not start while an older store to
+	 *    the same address has not been written, or while the address of an older store is unknown.
+	 *  @return bitmask of the stations allowed to start.
+	 */
+	long startable()
+	{
+		long allowed = -1L;
+		HashSet<Long> stores = new HashSet<Long>();
+		boolean unknown = false;
+		for (int station : writeQueue)
+			if (station >= storeIndex)
+				stores.add(RS[station].A);
+		for (int station : executionQueue)
+		{
+			if (station >= storeIndex)
+			{
+				// Computed at the start of execution unless it came from a trace
+				if (computeValues && (executingMask & (1L << station)) == 0)
+					unknown = true;
+				else
+					stores.add(RS[station].A);
+			}
+			else if (unknown || stores.contains(RS[station].A))
+				allowed &= ~(1L << station);
+		}
+		return allowed;
+	}
+	
+	/** startExecution - calculates base + offset, unless known from a trace, as the load or store starts.
+	 *  @param station - index of the reservation station.
+	 */
+	void startExecution(int station)
+	{
+		if (computeValues)
+			RS[station].A = RS[station].Vj + RS[station].A;
+		super.startExecution(station);
+	}
+	
+	/** finishExecution - moves a finished load or store from the execution queue to the write queue.
+	 *  @param station - index of the reservation station.
+	 */
+	void finishExecution(int station)
+	{
+		markResultReady(station);
+		executionQueue.remove(Integer.valueOf(station));
+		writeQueue.add(station);
+		StatusTable.getInstance().updateEndEX(RS[station].name);
+	}
+	
 	/** write - write stage for loads/stores. Since a store does not write to the CDB, both a store write
 	 *    and a load write (which does write to CDB) can occur during the same cycle.
 	 *  @return - common data bus representation.
@@ -143,53 +272,152 @@ public class MemUnit extends FunctionalUnit
 		CDB ret = null;
 		boolean loadWritten = false;
 		boolean storeWritten = false;
+		if (unbounded)
+			return writeUnbounded();
 		for (int i = 0; i < 2; i++)
 		{
 			if (writeQueue.isEmpty())
 				break;
-			Station write = writeQueue.peek();
+			int next = writeQueue.peek();
+			Station write = RS[next];
 			if ((write.operation.equals("sd") || write.operation.equals("s.d")) && !storeWritten)
 			{
-				write = writeQueue.remove();
-				write.resultWritten = true;
+				writeQueue.remove();
+				markWritten(next);
 			    StatusTable.getInstance().updateWrite(write.name);
-				Memory.getInstance().putLong(write.A, write.Vk);
+			    if (checker != null)
+			    	checker.store(write.name, write.A, write.Vk);
+			    if (computeValues)
+			    	Memory.getInstance().putLong(write.A, write.Vk);
 				
 				storeWritten = true;
 			}
 			else if ((write.operation.equals("ld") || write.operation.equals("l.d")) && !loadWritten)
 			{
-				write = writeQueue.remove();
-				write.resultWritten = true;
+				writeQueue.remove();
+				markWritten(next);
 			    StatusTable.getInstance().updateWrite(write.name);
 				ret = new CDB();
-		        ret.result = Memory.getInstance().getLong(write.A);
+		        if (computeValues)
+		        	ret.result = Memory.getInstance().getLong(write.A);
 		        ret.station = write.name;
+		        ret.tag = write.tag;
 		        loadWritten = true;
 			}
 		}
 		return ret;
 	}
 	
+	/** writeUnbounded - write stage with a copy of the unit per station: writes every finished store,
+	 *    and the oldest finished load, since each call puts at most one result on a CDB.
+	 *  @return the load's result, or null once no load is left to write.
+	 */
+	CDB writeUnbounded()
+	{
+		CDB ret = null;
+		for (Iterator<Integer> i = writeQueue.iterator(); i.hasNext(); )
+		{
+			int next = i.next();
+			Station write = RS[next];
+			if (next >= storeIndex)
+			{
+				i.remove();
+				markWritten(next);
+				StatusTable.getInstance().updateWrite(write.name);
+				if (checker != null)
+					checker.store(write.name, write.A, write.Vk);
+				if (computeValues)
+					Memory.getInstance().putLong(write.A, write.Vk);
+			}
+			else if (ret == null)
+			{
+				i.remove();
+				markWritten(next);
+				StatusTable.getInstance().updateWrite(write.name);
+				ret = new CDB();
+				if (computeValues)
+					ret.result = Memory.getInstance().getLong(write.A);
+				ret.station = write.name;
+				ret.tag = write.tag;
+			}
+		}
+		return ret;
+	}
+	
 	/** dump - prints message specifying which Functional Units is dumping, calls Superclass' dump method.
 	 */
 	public void dump()
 	{	
-	    System.out.println("Load Buffers");
+	    Output.getInstance().println("Load Buffers");
 	    Station.dumpHeader();
 	    for (int i = 0; i < storeIndex; i++) 
 	    {
 	    	RS[i].dump();
 	    }
-	    System.out.println("\nStore Buffers");
+	    Output.getInstance().println("\nStore Buffers");
 	    Station.dumpHeader();
 	    for (int i = storeIndex; i < RScount; i++)
 	    {
 	    	RS[i].dump();
 	    }
-	    System.out.println();
+	    Output.getInstance().println();
+	}
+
+	/** setTraceAddress - supplies the effective address of the load or store about to be issued when
+	 *    driven by a trace.
+	 *  @param address - effective address.
+	 */
+	public void setTraceAddress(long address)
+	{
+		traceAddress = address;
 	}
 
+	/** setChecker - routes every store through the lockstep checker before it is written to memory.
+	 *  @param checker - checker to use, or null to stop checking.
+	 */
+	public void setChecker(LockstepChecker checker)
+	{
+		this.checker = checker;
+	}
+	
+	/** save - in addition to the reservation stations, the issue-ordered execution queue and the write
+	 *    queue are saved as station indices.
+	 *  @param out - checkpoint stream
+	 *  @throws IOException
+	 */
+	public void save(DataOutputStream out) throws IOException
+	{
+		super.save(out);
+		saveQueue(out, executionQueue);
+		saveQueue(out, writeQueue);
+	}
+	
+	/** restore - reloads the reservation stations and both queues written by save.
+	 *  @param in - checkpoint stream
+	 *  @throws IOException
+	 */
+	public void restore(DataInputStream in) throws IOException
+	{
+		super.restore(in);
+		restoreQueue(in, executionQueue);
+		restoreQueue(in, writeQueue);
+	}
+	
+	private void saveQueue(DataOutputStream out, ArrayDeque<Integer> queue) throws IOException
+	{
+		out.writeInt(queue.size());
+		for (int station : queue)
+			out.writeInt(station);
+	}
+	
+	private void restoreQueue(DataInputStream in, ArrayDeque<Integer> queue) throws IOException
+	{
+		queue.clear();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++)
+			queue.add(in.readInt());
+	}
+	
 	@Override
 	void computeResult(int station) 
 	{
@@ -0,0 +1,7 @@
+package functionalUnits;
+//which ready reservation station a functional unit starts executing next
+public enum SelectionPolicy
+{
+    OLDEST_FIRST,  //the ready station issued earliest
+    INDEX_ORDER;   //the lowest numbered ready station
+}
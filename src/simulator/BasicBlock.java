@@ -0,0 +1,146 @@
+package simulator;
+
+/**
+ * BasicBlock is a run of instructions ending at a branch, jump or halt, translated once into
+ * pre-decoded operations: the kind of each instruction, its register numbers, and its immediate
+ * already sign extended or turned into a branch target. FunctionalSimulator executes a block from
+ * these arrays without fetching or decoding, and caches blocks by their starting PC.
+ */
+class BasicBlock
+{
+	// Operation kinds. daddi and daddiu are both ADDI, with the immediate extended at translation.
+	static final int NOP = 0;
+	static final int HALT = 1;
+	static final int BEQ = 2;
+	static final int BNE = 3;
+	static final int J = 4;
+	static final int LOAD_FP = 5;
+	static final int LOAD = 6;
+	static final int STORE_FP = 7;
+	static final int STORE = 8;
+	static final int ADDI = 9;
+	static final int DADD = 10;
+	static final int DSUB = 11;
+	static final int ADD_D = 12;
+	static final int SUB_D = 13;
+	static final int MUL_D = 14;
+	static final int DIV_D = 15;
+	static final int DUMP = 16;
+
+	static final int MAX_LENGTH = 256;
+
+	final int start;	// PC of the first instruction
+	final int next;		// PC following the last instruction, where the block falls through to
+	final int length;
+	final int[] kind;
+	final int[] dest;	// destination register, or the register stored or compared
+	final int[] src1;	// first source register, the base register of loads and stores
+	final int[] src2;	// second source register
+	final long[] imm;	// immediate, address offset, branch target or dump bits
+	// Successors, linked on first use: the block at the target of the final branch or jump, and
+	// the block at next. A flush drops every block, links included.
+	BasicBlock taken;
+	BasicBlock fallThrough;
+
+	private BasicBlock(int start, int length)
+	{
+		this.start = start;
+		this.next = start + length * 4;
+		this.length = length;
+		kind = new int[length];
+		dest = new int[length];
+		src1 = new int[length];
+		src2 = new int[length];
+		imm = new long[length];
+	}
+
+	/** translate - decodes the instructions starting at pc up to and including the first branch, jump
+	 *    or halt, the end of memory, or MAX_LENGTH instructions. Decoding matches FunctionalSimulator.step.
+	 *  @param s - simulator whose memory holds the code.
+	 *  @param pc - address of the first instruction, which must be a valid word address.
+	 *  @return the translated block.
+	 */
+	static BasicBlock translate(FunctionalSimulator s, int pc)
+	{
+		int length = 0;
+		int limit = Math.min(MAX_LENGTH, s.memory.length - pc / 4);
+		while (length < limit && !isBlockEnd(s.getWord(pc + length * 4)))
+			length++;
+		if (length < limit)
+			length++;
+		BasicBlock block = new BasicBlock(pc, length);
+		for (int i = 0; i < length; i++)
+		{
+			s.code[pc / 4 + i] = true;
+			block.decode(i, s.getWord(pc + i * 4), pc + i * 4);
+		}
+		return block;
+	}
+
+	static boolean isBlockEnd(int instruction)
+	{
+		int opcode = instruction >>> 26;
+		return opcode == 1 || opcode == 2 || opcode == 4 || opcode == 5;
+	}
+
+	private void decode(int i, int instruction, int pc)
+	{
+		int opcode = instruction >>> 26;
+		int rs = (instruction >>> 21) & 0x1f;
+		int rt = (instruction >>> 16) & 0x1f;
+		int offset = instruction & 0xffff;
+		src1[i] = rs;
+		dest[i] = rt;
+		imm[i] = offset;
+		switch (opcode)
+		{
+		case 1:
+			kind[i] = HALT;
+			return;
+		case 4: case 5:
+			kind[i] = (opcode == 4) ? BEQ : BNE;
+			src2[i] = rt;
+			imm[i] = pc + 4 + Tools.signExtend(16, offset) * 4;
+			return;
+		case 2:
+			kind[i] = J;
+			imm[i] = (instruction & 0x3ffffff) * 4;
+			return;
+		case 53:
+			kind[i] = LOAD_FP;
+			return;
+		case 55:
+			kind[i] = LOAD;
+			return;
+		case 61:
+			kind[i] = STORE_FP;
+			return;
+		case 63:
+			kind[i] = STORE;
+			return;
+		case 24:
+			kind[i] = ADDI;
+			imm[i] = Tools.signExtend(16, offset);
+			return;
+		case 25:
+			kind[i] = ADDI;
+			return;
+		case 44:
+			kind[i] = DUMP;
+			imm[i] = instruction & 0x3ffffff;
+			return;
+		}
+		dest[i] = (instruction >>> 11) & 0x1f;
+		src2[i] = rt;
+		switch (instruction & 0x3f)
+		{
+		case 44: kind[i] = DADD; break;
+		case 46: kind[i] = DSUB; break;
+		case 47: kind[i] = ADD_D; break;
+		case 48: kind[i] = SUB_D; break;
+		case 49: kind[i] = MUL_D; break;
+		case 50: kind[i] = DIV_D; break;
+		default: kind[i] = NOP;
+		}
+	}
+}
@@ -5,4 +5,5 @@ public class CDB
 {
 	  public long result;
 	  public String station;
+	  public int tag = Tags.NONE;	// tag waiting stations and registers know the result by
 }
@@ -0,0 +1,175 @@
+package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * CPIStack attributes every clock cycle of a run to exactly one cause: an instruction issued, or
+ * issue was held up by an executing branch, by a full group of reservation stations (split by why
+ * the stations are not draining), or by the drain after halt. Separately it counts, for each
+ * unit, the cycles in which a finished result lost arbitration for the single CDB.
+ */
+public class CPIStack
+{
+	// Reservation station groups, also used to index the per-unit counters
+	static final int INTEGER = 0;
+	static final int FPADD = 1;
+	static final int FPMULT = 2;
+	static final int FPDIV = 3;
+	static final int LOAD = 4;
+	static final int STORE = 5;
+	static final int BRANCH = 6;
+	static final String[] UNITS = {"Integer", "FP Adder", "FP Multiply", "FP Divide", "Load", "Store", "Branch"};
+
+	long issue;
+	long branch;
+	long drain;
+	long memoryOrdering;
+	long rename;
+	long[] stationsFull = new long[UNITS.length];
+	long[] cdbWait = new long[UNITS.length];
+	long[] cdbLost = new long[UNITS.length];
+
+	void issued()
+	{
+		issue++;
+	}
+
+	void branchInFlight()
+	{
+		branch++;
+	}
+
+	void draining()
+	{
+		drain++;
+	}
+
+	void memoryOrdering()
+	{
+		memoryOrdering++;
+	}
+
+	// Issue stalled because no physical register was free for the destination
+	void renameStall()
+	{
+		rename++;
+	}
+
+	// Issue stalled because every station of the unit was busy
+	void stationsFull(int unit)
+	{
+		stationsFull[unit]++;
+	}
+
+	// Issue stalled because the unit's stations were holding results waiting for the CDB
+	void cdbWait(int unit)
+	{
+		cdbWait[unit]++;
+	}
+
+	// The unit had a result to write this cycle but another unit had the CDB
+	void cdbLost(int unit)
+	{
+		cdbLost[unit]++;
+	}
+
+	/** unitOf - decodes which group of reservation stations an instruction issues to.
+	 *  @param instruction - instruction word.
+	 *  @return unit index, or -1 for instructions that do not use a station.
+	 */
+	static int unitOf(int instruction)
+	{
+		int opcode = Tools.grabBits(instruction, 0, 5);
+		switch (opcode)
+		{
+		case 2: case 4: case 5:
+			return BRANCH;
+		case 53: case 55:
+			return LOAD;
+		case 61: case 63:
+			return STORE;
+		case 24: case 25:
+			return INTEGER;
+		case 1: case 44:
+			return -1;
+		}
+		switch (Tools.grabBits(instruction, 26, 31))
+		{
+		case 44: case 46:
+			return INTEGER;
+		case 47: case 48:
+			return FPADD;
+		case 49:
+			return FPMULT;
+		case 50:
+			return FPDIV;
+		}
+		return -1;
+	}
+
+	/** report - prints each cause with its cycle count, share of all cycles and contribution to CPI.
+	 *  @param cycles - total clock cycles of the run.
+	 *  @param instructions - instructions issued during the run.
+	 */
+	void report(long cycles, long instructions)
+	{
+		Output.getInstance().println("CPI stack (" + instructions + " instructions, " + cycles + " cycles)");
+		Output.getInstance().println(Tools.pad("Cause", 32, " ", Direction.LEFT) + Tools.pad("Cycles", 8, " ", Direction.RIGHT) +
+			Tools.pad("Share", 8, " ", Direction.RIGHT) + Tools.pad("CPI", 8, " ", Direction.RIGHT));
+		line("Issue", issue, cycles, instructions);
+		line("Branch in flight", branch, cycles, instructions);
+		for (int i = 0; i < UNITS.length; i++)
+			line("Stations full: " + UNITS[i], stationsFull[i], cycles, instructions);
+		for (int i = 0; i < UNITS.length; i++)
+			line("CDB contention: " + UNITS[i], cdbWait[i], cycles, instructions);
+		line("Memory ordering", memoryOrdering, cycles, instructions);
+		line("Physical registers full", rename, cycles, instructions);
+		line("Drain after halt", drain, cycles, instructions);
+		for (int i = 0; i < UNITS.length; i++)
+			if (cdbLost[i] != 0)
+				Output.getInstance().println(Tools.pad("CDB arbitration lost: " + UNITS[i], 32, " ", Direction.LEFT) +
+					Tools.pad(Long.toString(cdbLost[i]), 8, " ", Direction.RIGHT));
+	}
+
+	// one row of the report, skipped when the cause never occurred
+	private void line(String cause, long count, long cycles, long instructions)
+	{
+		if (count == 0)
+			return;
+		Output.getInstance().println(Tools.pad(cause, 32, " ", Direction.LEFT) +
+			Tools.pad(Long.toString(count), 8, " ", Direction.RIGHT) +
+			Tools.pad(String.format("%.1f%%", 100.0 * count / cycles), 8, " ", Direction.RIGHT) +
+			Tools.pad(String.format("%.3f", (instructions == 0) ? 0.0 : (double)count / instructions), 8, " ", Direction.RIGHT));
+	}
+
+	void save(DataOutputStream out) throws IOException
+	{
+		out.writeLong(issue);
+		out.writeLong(branch);
+		out.writeLong(drain);
+		out.writeLong(memoryOrdering);
+		out.writeLong(rename);
+		for (int i = 0; i < UNITS.length; i++)
+		{
+			out.writeLong(stationsFull[i]);
+			out.writeLong(cdbWait[i]);
+			out.writeLong(cdbLost[i]);
+		}
+	}
+
+	void restore(DataInputStream in) throws IOException
+	{
+		issue = in.readLong();
+		branch = in.readLong();
+		drain = in.readLong();
+		memoryOrdering = in.readLong();
+		rename = in.readLong();
+		for (int i = 0; i < UNITS.length; i++)
+		{
+			stationsFull[i] = in.readLong();
+			cdbWait[i] = in.readLong();
+			cdbLost[i] = in.readLong();
+		}
+	}
+}
@@ -1,11 +1,15 @@
 package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class Clock
 {
     int time;  //time in cycles
     static Clock clockPtr = null;
 
-    //class is a singleton so constructor is private
-    private Clock()
+    //class is a singleton, apart from one per Core, so constructor is package private
+    Clock()
     {
         time = 0;
     }
@@ -13,6 +17,9 @@ public class Clock
     //returns singleton instance
     static Clock getInstance()
     {
+        Core core = Core.current();
+        if (core != null)
+            return core.clock;
         if (clockPtr == null)
             clockPtr = new Clock();
         return clockPtr;
@@ -30,4 +37,16 @@ public class Clock
     {
         time++;
     }
+
+    //write the current time to a checkpoint
+    void save(DataOutputStream out) throws IOException
+    {
+        out.writeInt(time);
+    }
+
+    //restore the time saved by save
+    void restore(DataInputStream in) throws IOException
+    {
+        time = in.readInt();
+    }
 }
@@ -0,0 +1,125 @@
+package simulator;
+import java.util.Arrays;
+
+/**
+ * Core is one processor of a MulticoreSimulator. It owns the state that is otherwise a singleton:
+ * both register files, the clock, the status table, its own output and its Simulator with the PC and
+ * functional units. A thread stepping a core makes it current, and the getInstance methods of those
+ * singletons then return the core's instance. Memory is shared, but the stores a core makes during a
+ * cycle are held in its store buffer, visible only to the core itself, until the end of the cycle.
+ * A Core also serves as a hardware context of an SMT Simulator, owning only its register files, and
+ * as an isolated simulator with a memory of its own, sharing nothing with other cores.
+ */
+class Core
+{
+	private static final ThreadLocal<Core> CURRENT = new ThreadLocal<Core>();
+	private static volatile boolean created;	// false until a core exists, so other runs skip the thread local
+
+	final int id;
+	final GPR gpr = new GPR();
+	final FPR fpr = new FPR();
+	final Clock clock;
+	final StatusTable status;
+	final StringBuilder text;	// everything the core printed, null for an SMT context
+	final Output output;
+	final Memory memory;	// memory of an isolated core, null when memory is shared
+	Simulator simulator;
+
+	// Store buffer: stores of the current cycle in program order
+	long[] storeAddress = new long[4];
+	long[] storeValue = new long[4];
+	int stores;
+
+	/** Core constructor - creates a core modelling the given machine.
+	 *  @param id - number of the core, which orders its stores against those of other cores.
+	 *  @param config - machine the core models.
+	 *  @param isolated - true for a core with its own memory, to be loaded with loadMemory.
+	 */
+	Core(int id, MachineConfig config, boolean isolated)
+	{
+		this.id = id;
+		created = true;
+		clock = new Clock();
+		status = new StatusTable();
+		text = new StringBuilder();
+		output = new Output(text);
+		memory = isolated ? new Memory(Memory.SIZE) : null;
+		simulator = new Simulator(config);
+		gpr.tags = fpr.tags = simulator.tags;
+	}
+
+	/** Core constructor - creates a hardware context of an SMT simulator, which shares the simulator's
+	 *    clock, status table, output and functional units. No core may be current.
+	 *  @param id - number of the context.
+	 *  @param simulator - the simulator the context issues to.
+	 */
+	Core(int id, Simulator simulator)
+	{
+		this.id = id;
+		created = true;
+		clock = Clock.getInstance();
+		status = StatusTable.getInstance();
+		text = null;
+		output = Output.getInstance();
+		memory = null;
+		this.simulator = simulator;
+		gpr.tags = fpr.tags = simulator.tags;
+	}
+
+	/** current - the core the calling thread is stepping.
+	 *  @return the core, or null outside a multicore run.
+	 */
+	static Core current()
+	{
+		return created ? CURRENT.get() : null;
+	}
+
+	/** enter - makes this core current on the calling thread.
+	 */
+	void enter()
+	{
+		CURRENT.set(this);
+	}
+
+	/** leave - makes no core current on the calling thread.
+	 */
+	static void leave()
+	{
+		CURRENT.remove();
+	}
+
+	/** done - true once the core has halted and its functional units are empty.
+	 */
+	boolean done()
+	{
+		return simulator.halt && simulator.finished();
+	}
+
+	/** bufferStore - holds a store until the end of the cycle.
+	 *  @param location - address of the long stored.
+	 *  @param value - value stored.
+	 */
+	void bufferStore(long location, long value)
+	{
+		if (stores == storeAddress.length)
+		{
+			storeAddress = Arrays.copyOf(storeAddress, stores * 2);
+			storeValue = Arrays.copyOf(storeValue, stores * 2);
+		}
+		storeAddress[stores] = location;
+		storeValue[stores] = value;
+		stores++;
+	}
+
+	/** bufferedStore - finds the youngest buffered store to an address.
+	 *  @param location - address of the long.
+	 *  @return index of the store in the buffer, or -1 if none.
+	 */
+	int bufferedStore(long location)
+	{
+		for (int i = stores - 1; i >= 0; i--)
+			if (storeAddress[i] == location)
+				return i;
+		return -1;
+	}
+}
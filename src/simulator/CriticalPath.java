@@ -0,0 +1,129 @@
+package simulator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * CriticalPath finds the longest chain of dependent instructions in a run. The dependence graph has
+ * an edge from each instruction to every in-flight instruction whose result its reservation station
+ * waited for at issue, and to the latest branch before it, since nothing is fetched past a branch
+ * until it resolves; operands already in the register files at issue add no edge. Along a chain
+ * an instruction takes the cycles from its start of execution through its write, and its consumers
+ * can start the cycle after, so the path length is the run time the machine would approach with
+ * unlimited reservation stations, issue bandwidth and CDBs but the same unit latencies. A path much
+ * shorter than the run points at wider resources, a path close to it at shorter latencies on the
+ * units that make it up.
+ */
+class CriticalPath
+{
+	static final int TOP = 10;	// instructions listed
+
+	StatusTable table;
+	int[] finish;		// per entry: cycles from the start of its chain through its write, 0 if it did not execute
+	int[] parent;		// per entry: producer the chain reaches it through, -1 if none
+	int last = -1;		// entry the critical path ends at
+
+	/** CriticalPath constructor - measures the longest chain ending at every instruction.
+	 *  @param table - status table of a run whose dependences were recorded.
+	 */
+	CriticalPath(StatusTable table)
+	{
+		this.table = table;
+		int count = table.v.size();
+		finish = new int[count];
+		parent = new int[count];
+		// Producers always precede their consumers in the table
+		for (int i = 0; i < count; i++)
+		{
+			StatusTable.Entry entry = table.v.elementAt(i);
+			parent[i] = -1;
+			if (entry.startEX == -1 || entry.write == -1)
+				continue;
+			int start = 0;
+			if (entry.producers != null)
+				for (int producer : entry.producers)
+					if (finish[producer] > start)
+					{
+						start = finish[producer];
+						parent[i] = producer;
+					}
+			finish[i] = start + entry.write - entry.startEX + 1;
+			if (last == -1 || finish[i] > finish[last])
+				last = i;
+		}
+	}
+
+	/** length - cycles along the critical path.
+	 *  @return the length, 0 if nothing executed.
+	 */
+	int length()
+	{
+		return (last == -1) ? 0 : finish[last];
+	}
+
+	/** print - prints the length of the critical path against the cycles of the run, how its cycles
+	 *    divide between the functional units, and the instructions on it that take the most cycles,
+	 *    by address.
+	 *  @param cycles - clock cycles of the run.
+	 */
+	void print(int cycles)
+	{
+		Output out = Output.getInstance();
+		int length = length();
+		int instructions = 0;
+		TreeMap<String, int[]> units = new TreeMap<String, int[]>();		// unit -> {instructions, execute, write-back}
+		TreeMap<Integer, int[]> addresses = new TreeMap<Integer, int[]>();	// pc -> {instructions, cycles, last entry}
+		for (int i = last; i != -1; i = parent[i])
+		{
+			StatusTable.Entry entry = table.v.elementAt(i);
+			instructions++;
+			int[] unit = units.get(entry.station.replaceAll("[0-9]+$", ""));
+			if (unit == null)
+				units.put(entry.station.replaceAll("[0-9]+$", ""), unit = new int[3]);
+			unit[0]++;
+			unit[1] += entry.endEX - entry.startEX + 1;
+			unit[2] += entry.write - entry.endEX;
+			int[] address = addresses.get(entry.pc);
+			if (address == null)
+				addresses.put(entry.pc, address = new int[] {0, 0, i});
+			address[0]++;
+			address[1] += entry.write - entry.startEX + 1;
+		}
+		out.println(String.format("Critical path: %d instructions, %d cycles of %d (%.1f%%)", instructions, length,
+			cycles, (cycles == 0) ? 0.0 : 100.0 * length / cycles));
+		out.pad("Unit", 20, ' ', Direction.LEFT);
+		out.pad("Instr", 8, ' ', Direction.RIGHT);
+		out.pad("Execute", 9, ' ', Direction.RIGHT);
+		out.pad("Write", 9, ' ', Direction.RIGHT);
+		out.pad("Share", 9, ' ', Direction.RIGHT);
+		out.println();
+		for (String name : units.keySet())
+		{
+			int[] unit = units.get(name);
+			out.pad("  " + name, 20, ' ', Direction.LEFT);
+			out.decimal(unit[0], 8, ' ', Direction.RIGHT);
+			out.decimal(unit[1], 9, ' ', Direction.RIGHT);
+			out.decimal(unit[2], 9, ' ', Direction.RIGHT);
+			out.pad(String.format("%.1f%%", 100.0 * (unit[1] + unit[2]) / length), 9, ' ', Direction.RIGHT);
+			out.println();
+		}
+		List<Integer> top = new ArrayList<Integer>(addresses.keySet());
+		Collections.sort(top, (a, b) -> addresses.get(b)[1] - addresses.get(a)[1]);
+		out.pad("PC", 8, ' ', Direction.LEFT);
+		out.pad("Instruction", 20, ' ', Direction.LEFT);
+		out.pad("Times", 7, ' ', Direction.RIGHT);
+		out.pad("Cycles", 8, ' ', Direction.RIGHT);
+		out.println();
+		for (int pc : top.subList(0, Math.min(TOP, top.size())))
+		{
+			int[] address = addresses.get(pc);
+			out.hex(pc, 8);
+			out.print("  ");
+			out.pad(table.v.elementAt(address[2]).instruction, 18, ' ', Direction.LEFT);
+			out.decimal(address[0], 7, ' ', Direction.RIGHT);
+			out.decimal(address[1], 8, ' ', Direction.RIGHT);
+			out.println();
+		}
+	}
+}
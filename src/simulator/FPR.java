@@ -5,8 +5,8 @@ public class FPR extends Registers
 {
     private static FPR fpr;
 
-    //constructor is private since class is a singleton
-    private FPR()
+    //constructor is package private since class is a singleton, apart from one per Core
+    FPR()
     {
         super();
     }
@@ -14,6 +14,8 @@ public class FPR extends Registers
     //get reference to the single instance
     public static FPR getInstance()
     {
+        Core core = Core.current();
+        if (core != null) return core.fpr;
         if (fpr == null) fpr = new FPR();
         return fpr;
     }
@@ -24,7 +26,7 @@ public class FPR extends Registers
         String Headings[] = {"F0-F3:   ", "F4-F7:   ", "F8-F11:  ",
                              "F12-F15: ", "F16-F19: ", "F20-F23: ", 
                              "F24-F27: ", "F28-F31: "};
-        System.out.print(Headings[j]);
+        Output.getInstance().print(Headings[j]);
     }
 
     //output the contents of the register file
@@ -36,6 +38,6 @@ public class FPR extends Registers
             dumpHeading(j);
             dumpRow(i, 4);
         }
-        System.out.println();
+        Output.getInstance().println();
     }
 }
@@ -0,0 +1,7 @@
+package simulator;
+//which hardware context is offered the issue slot first under SMT
+public enum FetchPolicy
+{
+    ROUND_ROBIN,  //the context after the one that issued last
+    ICOUNT;       //the context with the fewest instructions in reservation stations
+}
@@ -0,0 +1,463 @@
+package simulator;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * FunctionalSimulator executes the same ISA as Simulator directly against private copies of memory
+ * and the register files, without reservation stations or timing. It is used as a fast-forward
+ * engine, running translated basic blocks, and, one instruction at a time through step, as a
+ * reference model for the architectural results of a run.
+ */
+public class FunctionalSimulator
+{
+	int PC;
+	boolean halt;
+	long instructions;	// number of instructions executed so far
+	int[] memory;
+	long[] gpr;
+	long[] fpr;
+	boolean dumps = true;	// whether dump instructions produce output
+	// maintained by step only, not by translated blocks
+	long result;		// value written by the last instruction that wrote a register or memory
+	long address;		// effective address of the last load or store
+	// Translated blocks by the word address they start at, and which words of memory they were
+	// translated from. A store to any of those words drops every block.
+	BasicBlock[] blocks;
+	boolean[] code;
+	boolean codeWritten;	// set by a store into translated code
+	TraceWriter trace;	// records every instruction executed when set
+
+	/** FunctionalSimulator constructor - loads the program into memory and takes the initial
+	 *    architectural state from it.
+	 *  @param file - name of the hex file to load.
+	 *  @throws IOException
+	 */
+	public FunctionalSimulator(String file) throws IOException
+	{
+		Memory.getInstance().loadMemory(file);
+		loadState(0);
+	}
+
+	/** FunctionalSimulator constructor - starts from the current contents of memory and the register
+	 *    files at the given PC. The register files must not have results pending.
+	 *  @param pc - address of the first instruction to execute.
+	 */
+	public FunctionalSimulator(int pc)
+	{
+		loadState(pc);
+	}
+
+	/** loadState - copies memory and the register files into this simulator.
+	 *  @param pc - PC to resume from.
+	 */
+	public void loadState(int pc)
+	{
+		int[] previous = memory;
+		memory = Memory.getInstance().cloneMemory();
+		// Translations survive a reload only if the code they came from is unchanged
+		if (blocks == null || blocks.length != memory.length)
+		{
+			blocks = new BasicBlock[memory.length];
+			code = new boolean[memory.length];
+		}
+		else
+			for (int i = 0; i < memory.length; i++)
+				if (code[i] && memory[i] != previous[i])
+				{
+					flushBlocks();
+					break;
+				}
+		gpr = GPR.getInstance().cloneRegs();
+		fpr = FPR.getInstance().cloneRegs();
+		PC = pc;
+	}
+
+	/** storeState - copies this simulator's memory and register values back into Memory, GPR and FPR
+	 *    so that the detailed Simulator (or the dump routines) can pick up where this one stopped.
+	 */
+	public void storeState()
+	{
+		Memory.getInstance().setMemory(memory);
+		GPR.getInstance().setRegisters(gpr);
+		FPR.getInstance().setRegisters(fpr);
+	}
+
+	/** simulate - runs the program to its halt instruction and dumps the final architectural state.
+	 */
+	public void simulate()
+	{
+		run(Long.MAX_VALUE);
+		storeState();
+		Memory.getInstance().dump();
+		GPR.getInstance().dump();
+		FPR.getInstance().dump();
+		Output.getInstance().println("Total instructions executed: " + instructions);
+		Output.getInstance().flush();
+		if (trace != null)
+			trace.close();
+	}
+
+	/** run - executes up to count instructions, stopping early at halt. Whole translated basic
+	 *    blocks are executed where they fit in the count, the remainder one instruction at a time.
+	 *  @param count - maximum number of instructions to execute.
+	 *  @return number of instructions executed.
+	 */
+	public long run(long count)
+	{
+		long executed = 0;
+		while (!halt && executed < count)
+		{
+			// Translated blocks do not record, so a trace is written one instruction at a time
+			BasicBlock block = (trace == null) ? block(PC) : null;
+			if (block == null || block.length > count - executed)
+			{
+				step();
+				executed++;
+			}
+			else
+				executed += execute(block, count - executed);
+		}
+		return executed;
+	}
+
+	/** block - finds the translated block starting at an address, translating it on first use.
+	 *  @param pc - start address.
+	 *  @return the block, or null if pc is not a valid instruction address.
+	 */
+	BasicBlock block(int pc)
+	{
+		if (pc % 4 != 0 || pc < 0 || pc >= memory.length * 4)
+			return null;
+		BasicBlock block = blocks[pc / 4];
+		if (block == null)
+			block = blocks[pc / 4] = BasicBlock.translate(this, pc);
+		return block;
+	}
+
+	/** execute - runs translated blocks starting with the given one, following each to its successor
+	 *    through the links kept in the blocks, until the next block does not fit in the budget, the
+	 *    program halts, or a store overwrites translated code. In that case the rest of the block is
+	 *    abandoned and the PC left at the instruction after the store.
+	 *  @param block - block starting at the PC.
+	 *  @param budget - maximum number of instructions to execute.
+	 *  @return number of instructions executed.
+	 */
+	long execute(BasicBlock block, long budget)
+	{
+		long executed = 0;
+		long[] gpr = this.gpr;
+		long[] fpr = this.fpr;
+		codeWritten = false;
+		while (block.length <= budget - executed)
+		{
+			int[] kind = block.kind;
+			int[] dest = block.dest;
+			int[] src1 = block.src1;
+			int[] src2 = block.src2;
+			long[] imm = block.imm;
+			int pc = block.next;
+			for (int i = 0; i < block.length; i++)
+			{
+				switch (kind[i])
+				{
+				case BasicBlock.HALT:
+					halt = true;
+					pc = block.start + i * 4;
+					break;
+				case BasicBlock.BEQ:
+					if (gpr[src1[i]] == gpr[src2[i]])
+						pc = (int) imm[i];
+					break;
+				case BasicBlock.BNE:
+					if (gpr[src1[i]] != gpr[src2[i]])
+						pc = (int) imm[i];
+					break;
+				case BasicBlock.J:
+					pc = (int) imm[i];
+					break;
+				case BasicBlock.LOAD_FP:
+					fpr[dest[i]] = getLong(gpr[src1[i]] + imm[i]);
+					break;
+				case BasicBlock.LOAD:
+					if (dest[i] != 0)
+						gpr[dest[i]] = getLong(gpr[src1[i]] + imm[i]);
+					else
+						getLong(gpr[src1[i]] + imm[i]);
+					break;
+				case BasicBlock.STORE_FP:
+				case BasicBlock.STORE:
+					putLong(gpr[src1[i]] + imm[i], (kind[i] == BasicBlock.STORE) ? gpr[dest[i]] : fpr[dest[i]]);
+					if (codeWritten)
+					{
+						codeWritten = false;
+						PC = block.start + (i + 1) * 4;
+						executed += i + 1;
+						instructions += executed;
+						return executed;
+					}
+					break;
+				case BasicBlock.ADDI:
+					if (dest[i] != 0)
+						gpr[dest[i]] = gpr[src1[i]] + imm[i];
+					break;
+				case BasicBlock.DADD:
+					if (dest[i] != 0)
+						gpr[dest[i]] = gpr[src1[i]] + gpr[src2[i]];
+					break;
+				case BasicBlock.DSUB:
+					if (dest[i] != 0)
+						gpr[dest[i]] = gpr[src1[i]] - gpr[src2[i]];
+					break;
+				case BasicBlock.ADD_D:
+					fpr[dest[i]] = bits(fp(fpr[src1[i]]) + fp(fpr[src2[i]]));
+					break;
+				case BasicBlock.SUB_D:
+					fpr[dest[i]] = bits(fp(fpr[src1[i]]) - fp(fpr[src2[i]]));
+					break;
+				case BasicBlock.MUL_D:
+					fpr[dest[i]] = bits(fp(fpr[src1[i]]) * fp(fpr[src2[i]]));
+					break;
+				case BasicBlock.DIV_D:
+					fpr[dest[i]] = bits(fp(fpr[src1[i]]) / fp(fpr[src2[i]]));
+					break;
+				case BasicBlock.DUMP:
+					dump((int) imm[i]);
+					break;
+				}
+			}
+			executed += block.length;
+			PC = pc;
+			if (halt)
+				break;
+			// Follow the cached link to the successor, looking it up the first time
+			BasicBlock following;
+			if (pc == block.next)
+			{
+				following = block.fallThrough;
+				if (following == null)
+					following = block.fallThrough = block(pc);
+			}
+			else
+			{
+				following = block.taken;
+				if (following == null)
+					following = block.taken = block(pc);
+			}
+			if (following == null)
+				break;
+			block = following;
+		}
+		instructions += executed;
+		return executed;
+	}
+
+	// drops every translated block
+	private void flushBlocks()
+	{
+		Arrays.fill(blocks, null);
+		Arrays.fill(code, false);
+	}
+
+	/** step - fetches, decodes and executes the instruction at the PC. Field extraction matches
+	 *    Tools.grabBits, operand handling matches the functional units of the detailed simulator.
+	 */
+	public void step()
+	{
+		int instruction = getWord(PC);
+		int opcode = instruction >>> 26;
+		int rs = (instruction >>> 21) & 0x1f;
+		int rt = (instruction >>> 16) & 0x1f;
+		int imm = instruction & 0xffff;
+		int nextPC = PC + 4;
+		instructions++;
+		switch (opcode)
+		{
+		case 1:
+			halt = true;
+			if (trace != null)
+				trace.record(PC, instruction, false, 0, false);
+			return;
+		case 4:
+			if (gpr[rs] == gpr[rt])
+				nextPC += Tools.signExtend(16, imm) * 4;
+			break;
+		case 5:
+			if (gpr[rs] != gpr[rt])
+				nextPC += Tools.signExtend(16, imm) * 4;
+			break;
+		case 2:
+			nextPC = (instruction & 0x3ffffff) * 4;
+			break;
+		case 53:
+			address = gpr[rs] + imm;
+			fpr[rt] = result = getLong(address);
+			break;
+		case 55:
+			address = gpr[rs] + imm;
+			setGPR(rt, getLong(address));
+			break;
+		case 61:
+			address = gpr[rs] + imm;
+			putLong(address, result = fpr[rt]);
+			break;
+		case 63:
+			address = gpr[rs] + imm;
+			putLong(address, result = gpr[rt]);
+			break;
+		case 24:
+			setGPR(rt, gpr[rs] + Tools.signExtend(16, imm));
+			break;
+		case 25:
+			setGPR(rt, gpr[rs] + imm);
+			break;
+		case 44:
+			dump(instruction & 0x3ffffff);
+			break;
+		default:
+			int rd = (instruction >>> 11) & 0x1f;
+			switch (instruction & 0x3f)
+			{
+			case 49:
+				fpr[rd] = result = bits(fp(fpr[rs]) * fp(fpr[rt]));
+				break;
+			case 50:
+				fpr[rd] = result = bits(fp(fpr[rs]) / fp(fpr[rt]));
+				break;
+			case 44:
+				setGPR(rd, gpr[rs] + gpr[rt]);
+				break;
+			case 46:
+				setGPR(rd, gpr[rs] - gpr[rt]);
+				break;
+			case 47:
+				fpr[rd] = result = bits(fp(fpr[rs]) + fp(fpr[rt]));
+				break;
+			case 48:
+				fpr[rd] = result = bits(fp(fpr[rs]) - fp(fpr[rt]));
+				break;
+			}
+		}
+		if (trace != null)
+			trace.record(PC, instruction, opcode == 53 || opcode == 55 || opcode == 61 || opcode == 63,
+				address, nextPC != PC + 4);
+		PC = nextPC;
+	}
+
+	/** dump - outputs the architectural state selected by the dump bits. There are no reservation
+	 *    stations or status table in functional mode, so only memory and the register files are dumped.
+	 *  @param dump - value determining what to dump.
+	 */
+	void dump(int dump)
+	{
+		if (!dumps)
+			return;
+		storeState();
+		if ((dump & 1) != 0)
+			Memory.getInstance().dump();
+		if ((dump & 2) != 0)
+			GPR.getInstance().dump();
+		if ((dump & 4) != 0)
+			FPR.getInstance().dump();
+	}
+
+	/** setTrace - records every instruction executed from now on.
+	 *  @param trace - trace to append to, or null to stop recording.
+	 */
+	public void setTrace(TraceWriter trace)
+	{
+		this.trace = trace;
+	}
+
+	/** setDumps - enables or disables the output of dump instructions.
+	 *  @param enabled - false to silently skip dump instructions.
+	 */
+	public void setDumps(boolean enabled)
+	{
+		dumps = enabled;
+	}
+
+	public int getPC()
+	{
+		return PC;
+	}
+
+	public boolean halted()
+	{
+		return halt;
+	}
+
+	public long getResult()
+	{
+		return result;
+	}
+
+	public long getAddress()
+	{
+		return address;
+	}
+
+	public long getInstructionCount()
+	{
+		return instructions;
+	}
+
+	// Register r0 always holds zero, although the result is still recorded.
+	private void setGPR(int reg, long value)
+	{
+		result = value;
+		if (reg != 0)
+			gpr[reg] = value;
+	}
+
+	// Bit patterns in the FPR are doubles; arithmetic results are stored back as bit patterns.
+	private static double fp(long bits)
+	{
+		return Double.longBitsToDouble(bits);
+	}
+
+	private static long bits(double value)
+	{
+		return Double.doubleToLongBits(value);
+	}
+
+	int getWord(int location)
+	{
+		if ((location % 4 == 0) && (location >= 0) && (location < memory.length*4))
+			return memory[location/4];
+		accessError(location);
+		return -1;
+	}
+
+	long getLong(long location)
+	{
+		if ((location % 8 == 0) && (location >= 0) && (location < memory.length*4))
+			return ((long)memory[(int)location/4 + 1] << 32) | ((long)memory[(int)location/4] & 0xFFFFFFFFL);
+		accessError(location);
+		return -1;
+	}
+
+	void putLong(long location, long value)
+	{
+		if ((location % 8 == 0) && (location >= 0) && (location < memory.length*4))
+		{
+			int word = (int)location/4;
+			memory[word] = (int)value;
+			memory[word + 1] = (int)(value >> 32);
+			if (code[word] || code[word + 1])
+			{
+				flushBlocks();
+				codeWritten = true;
+			}
+			return;
+		}
+		accessError(location);
+	}
+
+	private void accessError(long location)
+	{
+		Output.getInstance().flush();
+		System.out.println("Error: unallowed memory access attempt.");
+		System.out.println("Location: " + location);
+		System.exit(1);
+	}
+}
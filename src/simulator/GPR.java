@@ -5,8 +5,8 @@ public class GPR extends Registers
 {
     private static GPR gpr;
 
-    //constructor is private since GPR is singleton
-    private GPR()
+    //constructor is package private since GPR is a singleton, apart from one per Core
+    GPR()
     {
         super();
     }
@@ -14,6 +14,8 @@ public class GPR extends Registers
     //This class is a singleton
     public static GPR getInstance()
     {
+        Core core = Core.current();
+        if (core != null) return core.gpr;
         if (gpr == null) gpr = new GPR();
         return gpr;
     }
@@ -24,7 +26,7 @@ public class GPR extends Registers
         String Headings[] = {"R0-R3:   ", "R4-R7:   ", "R8-R11:  ",
                              "R12-R15: ", "R16-R19: ", "R20-R23: ", 
                              "R24-R27: ", "R28-R31: "};
-        System.out.print(Headings[j]);
+        Output.getInstance().print(Headings[j]);
     }
 
     //output the contents of the register file
@@ -36,6 +38,6 @@ public class GPR extends Registers
             dumpHeading(j);
             dumpRow(i, 4);
         }
-        System.out.println();
+        Output.getInstance().println();
     }
 }
@@ -0,0 +1,78 @@
+package simulator;
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram counts latencies in cycles in the manner of an HDR histogram: values below 32
+ * have a bucket each, and every larger power of two is split into 16 buckets, so any latency is
+ * known to within 1/16 of its value however long the run. Percentiles are reported as the largest
+ * value of the bucket they fall in.
+ */
+class LatencyHistogram
+{
+	static final int SUB_BUCKETS = 16;
+
+	long[] counts = new long[2 * SUB_BUCKETS];
+	long count;
+	long sum;
+	int min = Integer.MAX_VALUE;
+	int max;
+
+	/** record - counts one latency.
+	 *  @param value - latency in cycles, not negative.
+	 */
+	void record(int value)
+	{
+		int index = indexOf(value);
+		if (index >= counts.length)
+			counts = Arrays.copyOf(counts, index + SUB_BUCKETS);
+		counts[index]++;
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/** mean - average latency.
+	 *  @return the mean, 0 if nothing was recorded.
+	 */
+	double mean()
+	{
+		return (count == 0) ? 0.0 : (double)sum / count;
+	}
+
+	/** percentile - the latency a given fraction of the recorded latencies do not exceed.
+	 *  @param fraction - between 0 and 1.
+	 *  @return largest value of the bucket holding the percentile, at most max.
+	 */
+	int percentile(double fraction)
+	{
+		long rank = Math.max(1, (long)Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return (int)Math.min(highestOf(i), max);
+		}
+		return max;
+	}
+
+	// Bucket of a value: the value itself below 2 * SUB_BUCKETS, else its top five significant bits
+	static int indexOf(int value)
+	{
+		if (value < 2 * SUB_BUCKETS)
+			return value;
+		int shift = 31 - Integer.numberOfLeadingZeros(value) - 4;
+		return SUB_BUCKETS * (shift + 1) + (value >> shift) - SUB_BUCKETS;
+	}
+
+	// Largest value counted in a bucket
+	static long highestOf(int index)
+	{
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		int top = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((long)(top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,140 @@
+package simulator;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LatencyReport summarizes the status table as latency histograms of the three phases an
+ * instruction spends in a reservation station: queueing (start of execution - issue), waiting for
+ * its operands or for its unit to be free; execution (end of execution - start); and write-back
+ * (write - end of execution), waiting for a CDB. Each phase is broken down by opcode and by
+ * functional unit. Long queueing with short write-back points at dependencies or a busy unit,
+ * long write-back at CDB contention.
+ */
+class LatencyReport
+{
+	static final String[] PHASES = {"Queueing", "Execution", "Write-back"};
+	static final String[] MEASURES = {"start - issue", "end - start", "write - end"};
+	static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+	// Per phase: histogram of every instruction, and histograms keyed by opcode and by unit
+	LatencyHistogram[] all = new LatencyHistogram[PHASES.length];
+	List<TreeMap<String, LatencyHistogram>> opcodes = new ArrayList<TreeMap<String, LatencyHistogram>>();
+	List<TreeMap<String, LatencyHistogram>> units = new ArrayList<TreeMap<String, LatencyHistogram>>();
+
+	/** LatencyReport constructor - builds the histograms of the instructions that completed a phase.
+	 *  @param table - status table of the run.
+	 */
+	LatencyReport(StatusTable table)
+	{
+		for (int phase = 0; phase < PHASES.length; phase++)
+		{
+			all[phase] = new LatencyHistogram();
+			opcodes.add(new TreeMap<String, LatencyHistogram>());
+			units.add(new TreeMap<String, LatencyHistogram>());
+		}
+		for (StatusTable.Entry entry : table.v)
+		{
+			int[] times = {entry.issue, entry.startEX, entry.endEX, entry.write};
+			String opcode = entry.instruction.split(" ")[0];
+			String unit = entry.station.replaceAll("[0-9]+$", "");
+			for (int phase = 0; phase < PHASES.length; phase++)
+				if (times[phase] != -1 && times[phase + 1] != -1)
+				{
+					int latency = times[phase + 1] - times[phase];
+					all[phase].record(latency);
+					histogram(opcodes.get(phase), opcode).record(latency);
+					histogram(units.get(phase), unit).record(latency);
+				}
+		}
+	}
+
+	private static LatencyHistogram histogram(TreeMap<String, LatencyHistogram> map, String key)
+	{
+		LatencyHistogram histogram = map.get(key);
+		if (histogram == null)
+		{
+			histogram = new LatencyHistogram();
+			map.put(key, histogram);
+		}
+		return histogram;
+	}
+
+	/** print - prints count, mean, minimum, percentiles and maximum of every histogram.
+	 */
+	void print()
+	{
+		Output out = Output.getInstance();
+		out.println("Latency histograms (cycles):");
+		for (int phase = 0; phase < PHASES.length; phase++)
+		{
+			out.pad(PHASES[phase] + " (" + MEASURES[phase] + ")", 28, ' ', Direction.LEFT);
+			out.pad("Count", 8, ' ', Direction.RIGHT);
+			out.pad("Mean", 9, ' ', Direction.RIGHT);
+			out.pad("Min", 6, ' ', Direction.RIGHT);
+			for (double percentile : PERCENTILES)
+				out.pad("P" + (int)Math.round(percentile * 100), 6, ' ', Direction.RIGHT);
+			out.pad("Max", 6, ' ', Direction.RIGHT);
+			out.println();
+			printRow("  all", all[phase]);
+			for (Map.Entry<String, LatencyHistogram> entry : opcodes.get(phase).entrySet())
+				printRow("  " + entry.getKey(), entry.getValue());
+			for (Map.Entry<String, LatencyHistogram> entry : units.get(phase).entrySet())
+				printRow("  " + entry.getKey() + " unit", entry.getValue());
+		}
+	}
+
+	private void printRow(String label, LatencyHistogram histogram)
+	{
+		Output out = Output.getInstance();
+		out.pad(label, 28, ' ', Direction.LEFT);
+		out.decimal(histogram.count, 8, ' ', Direction.RIGHT);
+		out.pad(String.format("%.2f", histogram.mean()), 9, ' ', Direction.RIGHT);
+		out.decimal(histogram.min, 6, ' ', Direction.RIGHT);
+		for (double percentile : PERCENTILES)
+			out.decimal(histogram.percentile(percentile), 6, ' ', Direction.RIGHT);
+		out.decimal(histogram.max, 6, ' ', Direction.RIGHT);
+		out.println();
+	}
+
+	/** export - writes every histogram as CSV rows of phase, group (all, opcode or unit), key, the
+	 *    largest latency of a bucket and the number of instructions in it. Empty buckets are left out.
+	 *  @param csvFile - file to write.
+	 *  @throws IOException
+	 */
+	void export(String csvFile) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(csvFile));
+		try
+		{
+			out.write("phase,group,key,latency,count");
+			out.newLine();
+			for (int phase = 0; phase < PHASES.length; phase++)
+			{
+				exportHistogram(out, PHASES[phase] + ",all,all", all[phase]);
+				for (Map.Entry<String, LatencyHistogram> entry : opcodes.get(phase).entrySet())
+					exportHistogram(out, PHASES[phase] + ",opcode," + entry.getKey(), entry.getValue());
+				for (Map.Entry<String, LatencyHistogram> entry : units.get(phase).entrySet())
+					exportHistogram(out, PHASES[phase] + ",unit," + entry.getKey(), entry.getValue());
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void exportHistogram(BufferedWriter out, String prefix, LatencyHistogram histogram) throws IOException
+	{
+		for (int i = 0; i < histogram.counts.length; i++)
+			if (histogram.counts[i] != 0)
+			{
+				out.write(prefix + "," + LatencyHistogram.highestOf(i) + "," + histogram.counts[i]);
+				out.newLine();
+			}
+	}
+}
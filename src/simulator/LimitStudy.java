@@ -0,0 +1,95 @@
+package simulator;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * LimitStudy measures how far a machine is from the dataflow limit of a program. The program is
+ * run functionally to record its instruction trace, then timed twice by the detailed simulator with
+ * the latencies of the given machine: once as the oracle machine, with unbounded reservation
+ * stations, copies of every unit, CDBs and issue, and branches predicted perfectly from the trace,
+ * and once as the machine itself. Both use the same functional units and latency model, so the
+ * oracle cycles are a lower bound on the cycles of any machine with those latencies.
+ */
+public class LimitStudy
+{
+	String program;
+	MachineConfig config;
+
+	/** LimitStudy constructor - sets up a limit study.
+	 *  @param program - hex file to study.
+	 *  @param config - machine to compare with the oracle, which takes its latencies.
+	 */
+	public LimitStudy(String program, MachineConfig config)
+	{
+		this.program = program;
+		this.config = config;
+	}
+
+	/** run - records the trace, times the oracle and the machine, and prints both with the headroom
+	 *    of the machine: how many times faster the oracle is.
+	 *  @throws IOException
+	 */
+	public void run() throws IOException
+	{
+		File traceFile = File.createTempFile("oracle", ".trace");
+		traceFile.deleteOnExit();
+		long[] oracle;
+		try
+		{
+			record(traceFile.getPath());
+			oracle = simulateOracle(traceFile.getPath());
+		}
+		finally
+		{
+			traceFile.delete();
+		}
+		long[] machine = ResultCache.simulate(program, config);
+		Output out = Output.getInstance();
+		out.println("Limit study of " + program + ":");
+		out.println(String.format("Oracle:  %d instructions in %d cycles, IPC %.4f", oracle[0], oracle[1],
+			(double)oracle[0] / oracle[1]));
+		out.println(String.format("Machine: %d instructions in %d cycles, IPC %.4f", machine[0], machine[1],
+			(double)machine[0] / machine[1]));
+		out.println(String.format("Headroom: %.2fx, the machine reaches %.1f%% of the oracle IPC",
+			(double)machine[1] / oracle[1], 100.0 * oracle[1] / machine[1]));
+		out.flush();
+	}
+
+	// Runs the program functionally on an isolated core, writing its trace
+	private void record(String traceFile) throws IOException
+	{
+		Core core = new Core(0, config, true);
+		core.enter();
+		try
+		{
+			FunctionalSimulator functional = new FunctionalSimulator(program);
+			TraceWriter trace = new TraceWriter(traceFile);
+			functional.setTrace(trace);
+			functional.setDumps(false);
+			functional.run(Long.MAX_VALUE);
+			trace.close();
+		}
+		finally
+		{
+			Core.leave();
+		}
+	}
+
+	// Times the trace on the oracle machine on an isolated core; returns {instructions, cycles}
+	private long[] simulateOracle(String traceFile) throws IOException
+	{
+		Core core = new Core(0, config.oracle(), true);
+		core.enter();
+		try
+		{
+			core.simulator.setTrace(traceFile);
+			core.simulator.enableOracle();
+			core.simulator.run();
+			return new long[] {core.simulator.getIssuedCount(), core.clock.get()};
+		}
+		finally
+		{
+			Core.leave();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package simulator;
+import java.util.HashMap;
+
+/**
+ * LockstepChecker runs a FunctionalSimulator alongside the detailed Simulator as a golden model.
+ * Each instruction is retired in the golden model as it issues, and the value it produces is held
+ * under the name of the reservation station it issued to. Every result broadcast on the CDB, and
+ * every store written to memory, is then compared against the golden value; the control flow is
+ * checked by comparing the PC of each issued instruction. The first divergence ends the run.
+ */
+public class LockstepChecker
+{
+	// What the golden model expects of one in-flight instruction
+	class Expected
+	{
+		int pc;
+		String instruction;
+		long value;
+		long address;
+	}
+
+	FunctionalSimulator golden;
+	HashMap<String, Expected> inFlight;
+	long instructions;
+	long results;
+	long stores;
+
+	/** LockstepChecker constructor - the golden model starts from the current contents of memory and
+	 *    the register files, which must be the program's initial state.
+	 *  @param pc - PC of the first instruction.
+	 */
+	public LockstepChecker(int pc)
+	{
+		golden = new FunctionalSimulator(pc);
+		golden.setDumps(false);
+		inFlight = new HashMap<String, Expected>();
+	}
+
+	/** issued - retires the instruction in the golden model. Must be called after the detailed
+	 *    simulator has successfully issued it.
+	 *  @param pc - address the instruction was fetched from.
+	 *  @param instruction - the instruction word.
+	 */
+	public void issued(int pc, int instruction)
+	{
+		if (pc != golden.getPC())
+			fail("instruction fetched from PC " + pc + ", golden model is at PC " + golden.getPC());
+		golden.step();
+		instructions++;
+		// Only loads, stores and arithmetic instructions occupy a station with a result to check
+		int opcode = Tools.grabBits(instruction, 0, 5);
+		int func = Tools.grabBits(instruction, 26, 31);
+		switch (opcode)
+		{
+		case 1: case 2: case 4: case 5: case 44:
+			return;
+		case 24: case 25: case 53: case 55: case 61: case 63:
+			break;
+		default:
+			if (func < 44 || func > 50 || func == 45)
+				return;
+		}
+		Expected expected = new Expected();
+		expected.pc = pc;
+		expected.instruction = StatusTable.getInstance().lastInstruction();
+		expected.value = golden.getResult();
+		expected.address = golden.getAddress();
+		inFlight.put(StatusTable.getInstance().lastStation(), expected);
+	}
+
+	/** broadcast - compares a result on the CDB, which the register file and waiting reservation
+	 *    stations are about to consume, with the golden value.
+	 *  @param cdb - Common Data Bus
+	 */
+	public void broadcast(CDB cdb)
+	{
+		Expected expected = inFlight.remove(cdb.station);
+		if (expected == null)
+			fail("unexpected result " + Long.toHexString(cdb.result) + " broadcast by " + cdb.station);
+		results++;
+		if (expected.value != cdb.result)
+			fail(expected, cdb.station, "result " + Long.toHexString(cdb.result) +
+				", expected " + Long.toHexString(expected.value));
+	}
+
+	/** store - compares a store about to be written to memory with the golden address and value.
+	 *  @param station - name of the store buffer writing.
+	 *  @param address - effective address.
+	 *  @param value - value stored.
+	 */
+	public void store(String station, long address, long value)
+	{
+		Expected expected = inFlight.remove(station);
+		if (expected == null)
+			fail("unexpected store to " + address + " from " + station);
+		stores++;
+		if (expected.address != address || expected.value != value)
+			fail(expected, station, "stored " + Long.toHexString(value) + " to " + address + ", expected " +
+				Long.toHexString(expected.value) + " to " + expected.address);
+	}
+
+	/** report - prints a summary of what was compared.
+	 */
+	public void report()
+	{
+		Output.getInstance().println("Lockstep check passed: " + instructions + " instructions, " + results +
+			" results and " + stores + " stores compared");
+		Output.getInstance().flush();
+	}
+
+	private void fail(Expected expected, String station, String detail)
+	{
+		fail(expected.instruction + " (PC " + expected.pc + ", " + station + ") " + detail);
+	}
+
+	private void fail(String detail)
+	{
+		Output.getInstance().flush();
+		System.out.println("Lockstep divergence at cycle " + Clock.getInstance().get() + ": " + detail);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,161 @@
+package simulator;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MachineConfig describes the machine a Simulator models: the execution latency and reservation
+ * station count of every functional unit, the number of CDBs and the issue width. The defaults are
+ * the machine the simulator has always modelled. Parameters are set by name, and a configuration
+ * prints as the full list of name=value pairs, whose hash identifies it in the sweep cache.
+ */
+public class MachineConfig
+{
+	static final String[] NAMES = {"integerLatency", "fpAddLatency", "fpMultLatency", "fpDivLatency",
+		"memoryLatency", "branchLatency", "integerStations", "fpAddStations", "fpMultStations",
+		"fpDivStations", "loadStations", "storeStations", "branchStations", "cdbWidth", "issueWidth"};
+	static final int[] DEFAULTS = {7, 13, 13, 17, 11, 9, 4, 4, 4, 4, 4, 4, 1, 1, 1};
+	// Parameter indices
+	static final int INTEGER_LATENCY = 0;
+	static final int FPADD_LATENCY = 1;
+	static final int FPMULT_LATENCY = 2;
+	static final int FPDIV_LATENCY = 3;
+	static final int MEMORY_LATENCY = 4;
+	static final int BRANCH_LATENCY = 5;
+	static final int INTEGER_STATIONS = 6;
+	static final int FPADD_STATIONS = 7;
+	static final int FPMULT_STATIONS = 8;
+	static final int FPDIV_STATIONS = 9;
+	static final int LOAD_STATIONS = 10;
+	static final int STORE_STATIONS = 11;
+	static final int BRANCH_STATIONS = 12;
+	static final int CDB_WIDTH = 13;
+	static final int ISSUE_WIDTH = 14;
+
+	int[] values = DEFAULTS.clone();
+
+	/** MachineConfig constructor - the default machine.
+	 */
+	public MachineConfig()
+	{
+	}
+
+	/** MachineConfig constructor - a copy of another configuration.
+	 *  @param other - configuration to copy.
+	 */
+	public MachineConfig(MachineConfig other)
+	{
+		values = other.values.clone();
+	}
+
+	/** parse - the default machine with the parameters of a comma separated name=value list changed.
+	 *  @param list - parameters to set, for example "cdbWidth=2,loadStations=8".
+	 *  @return the configuration.
+	 */
+	public static MachineConfig parse(String list)
+	{
+		MachineConfig config = new MachineConfig();
+		for (String pair : list.split(","))
+		{
+			int equals = pair.indexOf('=');
+			if (equals == -1)
+				throw new IllegalArgumentException("machine parameter " + pair + " is not name=value");
+			String name = pair.substring(0, equals).trim();
+			config.set(name, number(name, pair.substring(equals + 1).trim()));
+		}
+		return config;
+	}
+
+	/** oracle - the machine of an oracle limit study: the latencies of this one, the largest number of
+	 *    reservation stations each unit can have, and a CDB and an issue slot for every station.
+	 *  @return the configuration.
+	 */
+	public MachineConfig oracle()
+	{
+		MachineConfig config = new MachineConfig(this);
+		for (int p = INTEGER_STATIONS; p <= BRANCH_STATIONS; p++)
+			config.values[p] = 64;
+		config.values[LOAD_STATIONS] = config.values[STORE_STATIONS] = 32;
+		int stations = 0;
+		for (int p = INTEGER_STATIONS; p <= BRANCH_STATIONS; p++)
+			stations += config.values[p];
+		config.values[CDB_WIDTH] = config.values[ISSUE_WIDTH] = stations;
+		return config;
+	}
+
+	/** indexOf - looks up a parameter by name.
+	 *  @param name - parameter name.
+	 *  @return index of the parameter.
+	 */
+	static int indexOf(String name)
+	{
+		for (int i = 0; i < NAMES.length; i++)
+			if (NAMES[i].equals(name))
+				return i;
+		throw new IllegalArgumentException("unknown machine parameter " + name);
+	}
+
+	/** number - reads the value of a parameter.
+	 *  @param name - parameter name, for the error message.
+	 *  @param text - value as written.
+	 *  @return the value.
+	 */
+	static int number(String name, String text)
+	{
+		try
+		{
+			return Integer.parseInt(text);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("value " + text + " of machine parameter " + name + " is not a number");
+		}
+	}
+
+	/** get - value of a parameter.
+	 *  @param parameter - index of the parameter.
+	 *  @return its value.
+	 */
+	int get(int parameter)
+	{
+		return values[parameter];
+	}
+
+	/** set - changes a parameter. Latencies are at least 2 cycles, station counts and widths at least
+	 *    1, and no unit may have more than 64 reservation stations.
+	 *  @param name - parameter name.
+	 *  @param value - new value.
+	 */
+	public void set(String name, int value)
+	{
+		int parameter = indexOf(name);
+		int minimum = (parameter <= BRANCH_LATENCY) ? 2 : 1;
+		if (value < minimum)
+			throw new IllegalArgumentException(name + " must be at least " + minimum);
+		int[] changed = values.clone();
+		changed[parameter] = value;
+		if (changed[LOAD_STATIONS] + changed[STORE_STATIONS] > 64 || value > 64 && parameter >= INTEGER_STATIONS && parameter <= BRANCH_STATIONS)
+			throw new IllegalArgumentException("a functional unit has at most 64 reservation stations");
+		values[parameter] = value;
+	}
+
+	/** hash - identifies the configuration, the same in every run.
+	 *  @return hex digest of toString.
+	 */
+	public String hash()
+	{
+		return Tools.hash(toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** toString - every parameter as a comma separated name=value list, which parse reads back.
+	 */
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < NAMES.length; i++)
+		{
+			if (i > 0)
+				text.append(',');
+			text.append(NAMES[i]).append('=').append(values[i]);
+		}
+		return text.toString();
+	}
+}
@@ -1,5 +1,7 @@
 package simulator;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 
@@ -10,10 +12,12 @@ import java.io.IOException;
 public class Memory
 {
     private static Memory mem;
+    static final int SIZE = 4000;   //words
     private int [] memory;
     private int size;
 
-    private Memory(int size)
+    //constructor is package private since Memory is a singleton, apart from one per isolated Core
+    Memory(int size)
     {
         this.size = size;
         memory = new int[this.size];
@@ -21,7 +25,9 @@ public class Memory
 
     public static Memory getInstance()
     {
-        if (mem == null) mem = new Memory(4000);
+        Core core = Core.current();
+        if (core != null && core.memory != null) return core.memory;
+        if (mem == null) mem = new Memory(SIZE);
         return mem;
     }
     
@@ -55,9 +61,20 @@ public class Memory
     {
     	int word = -1;
     	if ((location % 4 == 0) && (location >= 0) && (location < size*4))
+    	{
     		word = memory[(location/4)];
+    		Core core = Core.current();
+    		if (core != null && core.stores > 0)
+    		{
+    			// The long a buffered store wrote covers two words
+    			int i = core.bufferedStore(location & ~7);
+    			if (i != -1)
+    				word = (int) (core.storeValue[i] >> ((location & 4) * 8));
+    		}
+    	}
     	else
     	{
+    		Output.getInstance().flush();
     		System.out.println("Error: unallowed memory access attempt:");
     		System.out.println("Location: " + location);
     		System.exit(1);
@@ -79,9 +96,17 @@ public class Memory
     		int first = this.memory[(((int)location + 4) / 4)];
     		int second = this.memory[((int)location / 4)];    	    
     		result = ((long)first << 32) | ((long)second & 0xFFFFFFFFL);
+    		Core core = Core.current();
+    		if (core != null && core.stores > 0)
+    		{
+    			int i = core.bufferedStore(location);
+    			if (i != -1)
+    				result = core.storeValue[i];
+    		}
     	}
     	else
     	{
+    		Output.getInstance().flush();
     		System.out.println("Error: unallowed memory access attempt.");
     		System.out.println("Location: " + location);
     		System.exit(1);
@@ -97,6 +122,13 @@ public class Memory
     {
     	if ((location % 8 == 0) && (location >= 0) && (location <= size*4))
     	{
+    		// Other cores see the store once the cycle ends
+    		Core core = Core.current();
+    		if (core != null && core.memory == null)
+    		{
+    			core.bufferStore(location, value);
+    			return;
+    		}
     		int first = (int)(value & 0xFFFFFFFF);
     		int second = (int)(value >> 32 & 0xFFFFFFFF);
     		memory[((int)location / 4)] = first;
@@ -104,55 +136,80 @@ public class Memory
     	}
     	else
     	{
+    		Output.getInstance().flush();
     		System.out.println("Error: unallowed memory access attempt::");
     		System.out.println("Location: " + location);
     		System.exit(1);
     	}
     }
  
-    //helper function for dumping memory
-    private String buildLine(int i)
+    /** commit - performs the stores a core buffered during a cycle, in the order it made them, and
+     *    empties its store buffer.
+     *  @param core - core whose stores are performed.
+     */
+    void commit(Core core)
     {
-        String line;
-        int j;
-        line = new String();
+    	apply(core, memory);
+    	core.stores = 0;
+    }
 
-        for (j = i; j < i + 8; j++)
-        {
-            line = line + Tools.pad(Integer.toHexString(memory[j]), 8, 
-                                    "0", Direction.RIGHT) + " ";
-        }
-        return line;
+    //writes the stores in a core's store buffer to words
+    private static void apply(Core core, int[] words)
+    {
+    	for (int i = 0; i < core.stores; i++)
+    	{
+    		int word = (int) core.storeAddress[i] / 4;
+    		words[word] = (int) core.storeValue[i];
+    		words[word + 1] = (int) (core.storeValue[i] >> 32);
+    	}
     }
 
-    //output contents of memory
+    //helper function for dumping memory, true if the row of 8 words at i
+    //repeats the row before it
+    private static boolean sameLine(int[] memory, int i)
+    {
+        if (i == 0) return false;
+        for (int j = i; j < i + 8; j++)
+            if (memory[j] != memory[j - 8]) return false;
+        return true;
+    }
+
+    //output contents of memory, as the current core sees it
     public void dump()
     {
+        int[] memory = this.memory;
+        Core core = Core.current();
+        if (core != null && core.stores > 0)
+        {
+            memory = memory.clone();
+            apply(core, memory);
+        }
+        Output out = Output.getInstance();
         int address = 0;
-        String lastline = new String("junk");
-        String nextline;
         boolean star = false, needNewline = false;
         for (int i = 0; i < memory.length; i+=8)
         {
-            nextline = buildLine(i);
-            if (! lastline.equals(nextline))
+            if (! sameLine(memory, i))
             {
                 star = false;
-                if (needNewline) System.out.println(); 
-                System.out.print(Tools.pad(Integer.toHexString(address), 4, "0",
-                                           Direction.RIGHT) + ":\t");
-                System.out.print(nextline);  
+                if (needNewline) out.println(); 
+                out.hex(address, 4);
+                out.print(":\t");
+                for (int j = i; j < i + 8; j++)
+                {
+                    out.hex(memory[j] & 0xffffffffL, 8);
+                    out.print(' ');
+                }
                 needNewline = true;
-            } else if (lastline.equals(nextline) && (star == false))
+            } else if (star == false)
             {
-               System.out.println(" *");
+               out.println(" *");
                needNewline = false;
                star = true;
             } 
             address = address + 32;
-            lastline = nextline;
         }
-        System.out.println();
+        out.println();
     }
 
     //needed by the GUI
@@ -161,6 +218,37 @@ public class Memory
         return memory.clone();
     }
 
+    /** setMemory - replaces the contents of memory, used when switching from functional simulation.
+     *  @param contents - words to copy; must be the same size as memory.
+     */
+    void setMemory(int[] contents)
+    {
+    	System.arraycopy(contents, 0, memory, 0, size);
+    }
+
+    /** save - writes the contents of memory to a checkpoint.
+     *  @param out - checkpoint stream
+     *  @throws IOException
+     */
+    void save(DataOutputStream out) throws IOException
+    {
+    	out.writeInt(size);
+    	for (int i = 0; i < size; i++)
+    		out.writeInt(memory[i]);
+    }
+
+    /** restore - replaces the contents of memory with those written by save.
+     *  @param in - checkpoint stream
+     *  @throws IOException
+     */
+    void restore(DataInputStream in) throws IOException
+    {
+    	if (in.readInt() != size)
+    		throw new IOException("checkpoint memory size does not match");
+    	for (int i = 0; i < size; i++)
+    		memory[i] = in.readInt();
+    }
+
 }
 
 
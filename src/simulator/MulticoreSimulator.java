@@ -0,0 +1,189 @@
+package simulator;
+import functionalUnits.SelectionPolicy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MulticoreSimulator runs the program on several cores sharing one Memory. Each core is a full
+ * Tomasulo Simulator with its own registers, reservation stations and PC, and all of them start at
+ * address 0. The cores advance in lock step: each cycle a pool of threads steps every core once, then
+ * a barrier performs the stores made during the cycle in core order. No core sees the stores of
+ * another before the cycle ends, so the results do not depend on how the threads are scheduled.
+ */
+public class MulticoreSimulator
+{
+	Core[] cores;
+	int threads;
+	CyclicBarrier barrier;
+	volatile boolean running = true;	// cleared at the barrier once every core is done
+
+	/** MulticoreSimulator constructor - loads the program into the shared memory and creates the cores.
+	 *  @param file - name of the hex file to load.
+	 *  @param count - number of cores.
+	 *  @throws IOException
+	 */
+	public MulticoreSimulator(String file, int count) throws IOException
+	{
+		this(file, count, new MachineConfig());
+	}
+
+	/** MulticoreSimulator constructor - loads the program and creates cores modelling the given machine.
+	 *  @param file - name of the hex file to load.
+	 *  @param count - number of cores.
+	 *  @param config - machine each core models.
+	 *  @throws IOException
+	 */
+	public MulticoreSimulator(String file, int count, MachineConfig config) throws IOException
+	{
+		if (count < 1)
+			throw new IllegalArgumentException("a multicore run needs at least one core");
+		Memory.getInstance().loadMemory(file);
+		cores = new Core[count];
+		for (int i = 0; i < count; i++)
+			cores[i] = new Core(i, config, false);
+		threads = Math.min(count, Runtime.getRuntime().availableProcessors());
+		barrier = new CyclicBarrier(threads, this::endCycle);
+	}
+
+	/** setSelectionPolicy - chooses how the functional units of every core pick among ready stations.
+	 *  @param policy - OLDEST_FIRST (the default) or INDEX_ORDER.
+	 */
+	public void setSelectionPolicy(SelectionPolicy policy)
+	{
+		for (Core core : cores)
+			core.simulator.setSelectionPolicy(policy);
+	}
+
+	/** enableRenaming - gives every core physical register files of the given sizes.
+	 *  @param gprSize - number of physical general purpose registers, more than 32.
+	 *  @param fprSize - number of physical floating point registers, more than 32.
+	 */
+	public void enableRenaming(int gprSize, int fprSize)
+	{
+		for (Core core : cores)
+		{
+			core.enter();
+			core.simulator.enableRenaming(gprSize, fprSize);
+			Core.leave();
+		}
+	}
+
+	/** simulate - runs every core until all have halted and drained, then prints what each core
+	 *    printed followed by its registers, status table and timing, the shared memory, and the
+	 *    throughput of the whole machine.
+	 */
+	public void simulate()
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++)
+		{
+			int first = t;
+			workers.add(pool.submit(() -> step(first)));
+		}
+		try
+		{
+			for (Future<?> worker : workers)
+				worker.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			System.out.println("Error: interrupted while simulating cores");
+			System.exit(1);
+		}
+		catch (ExecutionException e)
+		{
+			Output.getInstance().flush();
+			System.out.println("Error: core simulation failed: " + e.getCause());
+			System.exit(1);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		report();
+	}
+
+	/** step - worker loop: steps the cores first, first + threads, ... once per cycle and waits at
+	 *    the barrier for the other workers.
+	 *  @param first - index of the first core this worker steps.
+	 */
+	private void step(int first)
+	{
+		try
+		{
+			while (running)
+			{
+				for (int i = first; i < cores.length; i += threads)
+				{
+					Core core = cores[i];
+					if (!core.done())
+					{
+						core.enter();
+						core.simulator.cycle();
+					}
+				}
+				Core.leave();
+				barrier.await();
+			}
+		}
+		catch (InterruptedException | BrokenBarrierException e)
+		{
+			// another worker failed, and its exception is reported instead
+		}
+		catch (RuntimeException e)
+		{
+			Core.leave();
+			barrier.reset();
+			throw e;
+		}
+	}
+
+	/** endCycle - barrier action run once every core has been stepped: performs the cycle's stores
+	 *    in core order and stops the workers once every core is done.
+	 */
+	private void endCycle()
+	{
+		boolean more = false;
+		for (Core core : cores)
+		{
+			Memory.getInstance().commit(core);
+			more |= !core.done();
+		}
+		running = more;
+	}
+
+	/** report - prints the output of every core in core order, the shared memory, and the total
+	 *    instructions, cycles and IPC of the machine.
+	 */
+	void report()
+	{
+		Output out = Output.getInstance();
+		long instructions = 0;
+		int cycles = 0;
+		for (Core core : cores)
+		{
+			core.enter();
+			core.simulator.report();
+			Output.getInstance().flush();
+			Core.leave();
+			out.println("Core " + core.id + ":");
+			out.print(core.text.toString());
+			instructions += core.simulator.getIssuedCount();
+			cycles = Math.max(cycles, core.clock.get());
+		}
+		out.println("Shared memory:");
+		Memory.getInstance().dump();
+		out.println("Cores: " + cores.length + ", " + instructions + " instructions in " + cycles + " cycles");
+		out.println(String.format("Aggregate IPC: %.4f", (cycles == 0) ? 0.0 : (double)instructions / cycles));
+		out.flush();
+	}
+}
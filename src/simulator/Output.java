@@ -0,0 +1,270 @@
+package simulator;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Output is the single sink for dumps and reports. Text, padding and hex or decimal numbers are
+ * formatted straight into a character buffer. A full buffer is handed, and no longer touched, to a
+ * background thread that writes it to stdout or a file, so the simulation does not wait on I/O.
+ * Buffers are recycled through a bounded pool: once every buffer is waiting to be written the
+ * simulation blocks until one is free. A single writer takes buffers in the order they were handed
+ * over, so the output is the same as if it were written directly. Anything printed to System.out
+ * while the simulation runs must be preceded by a flush.
+ */
+public class Output
+{
+    private static Output output;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final int BUFFERS = 4;
+
+    //a buffer of text and how much of it is filled
+    private static class Chunk
+    {
+        final char[] text = new char[1 << 16];
+        int length;
+    }
+
+    private Writer out;
+    private StringBuilder capture; //text collected instead of written, for a Core
+    private ArrayBlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(BUFFERS);
+    private ArrayBlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(BUFFERS);
+    private Chunk current;
+    private char[] buffer; //text of current
+    private int count;
+    private long handedOff; //chunks given to the writer
+    private long written; //chunks the writer has finished, guarded by this
+    private Thread writer;
+    private char[] digits = new char[20]; //scratch space for decimal conversion
+
+    //constructor is private since Output is singleton
+    private Output()
+    {
+        out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out));
+        for (int i = 1; i < BUFFERS; i++)
+            free.add(new Chunk());
+        current = new Chunk();
+        buffer = current.text;
+    }
+
+    //collects the output of one Core, which is printed once the cores have finished
+    Output(StringBuilder capture)
+    {
+        this.capture = capture;
+        buffer = new char[1 << 12];
+    }
+
+    //This class is a singleton, apart from one per Core
+    public static Output getInstance()
+    {
+        Core core = Core.current();
+        if (core != null) return core.output;
+        if (output == null) output = new Output();
+        return output;
+    }
+
+    /** setFile - sends all further output to a file instead of stdout.
+     *  @param fileName - file to write, replaced if it exists.
+     *  @throws IOException
+     */
+    public void setFile(String fileName) throws IOException
+    {
+        flush();
+        out = new FileWriter(fileName);
+    }
+
+    public void print(char c)
+    {
+        if (count == buffer.length)
+            drain();
+        buffer[count++] = c;
+    }
+
+    public void print(String s)
+    {
+        int length = s.length();
+        for (int start = 0; start < length; )
+        {
+            if (count == buffer.length)
+                drain();
+            int n = Math.min(length - start, buffer.length - count);
+            s.getChars(start, start + n, buffer, count);
+            count += n;
+            start += n;
+        }
+    }
+
+    public void println(String s)
+    {
+        print(s);
+        println();
+    }
+
+    public void println()
+    {
+        print(NEWLINE);
+    }
+
+    /** pad - prints field padded on the left or right side with padChar to len characters. As with
+     *    Tools.pad, a field already longer than len still gets one pad character.
+     *  @param field - text to print.
+     *  @param len - width of the field.
+     *  @param padChar - character to pad with.
+     *  @param dir - LEFT pads after the field, RIGHT pads before it.
+     */
+    public void pad(String field, int len, char padChar, Direction dir)
+    {
+        if (dir == Direction.RIGHT)
+            padding(len - field.length(), padChar);
+        print(field);
+        if (dir == Direction.LEFT)
+            padding(len - field.length(), padChar);
+    }
+
+    /** hex - prints value as unsigned hex, right aligned and zero filled to len digits.
+     *  @param value - value to print.
+     *  @param len - minimum number of digits.
+     */
+    public void hex(long value, int len)
+    {
+        int n = (value == 0) ? 1 : (67 - Long.numberOfLeadingZeros(value)) / 4;
+        padding(len - n, '0');
+        if (count + n > buffer.length)
+            drain();
+        for (int i = count + n - 1; i >= count; i--, value >>>= 4)
+            buffer[i] = Character.forDigit((int) (value & 0xf), 16);
+        count += n;
+    }
+
+    /** decimal - prints value in decimal, padded as by pad.
+     *  @param value - value to print.
+     *  @param len - width of the field.
+     *  @param padChar - character to pad with.
+     *  @param dir - LEFT pads after the number, RIGHT pads before it.
+     */
+    public void decimal(long value, int len, char padChar, Direction dir)
+    {
+        int n = 0;
+        long rest = value;
+        do
+        {
+            digits[digits.length - ++n] = (char) ('0' + Math.abs(rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0)
+            digits[digits.length - ++n] = '-';
+        if (dir == Direction.RIGHT)
+            padding(len - n, padChar);
+        for (int i = digits.length - n; i < digits.length; i++)
+            print(digits[i]);
+        if (dir == Direction.LEFT)
+            padding(len - n, padChar);
+    }
+
+    /** flush - waits until everything printed so far has been written out.
+     */
+    public void flush()
+    {
+        if (capture != null)
+        {
+            drain();
+            return;
+        }
+        if (count > 0)
+            drain();
+        synchronized (this)
+        {
+            while (written < handedOff)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void padding(int n, char padChar)
+    {
+        if (n == 0)
+            return;
+        for (int i = Math.max(n, 1); i > 0; i--)
+            print(padChar);
+    }
+
+    //hands the current buffer to the writer and continues in a free one
+    private void drain()
+    {
+        if (capture != null)
+        {
+            capture.append(buffer, 0, count);
+            count = 0;
+            return;
+        }
+        if (writer == null)
+        {
+            writer = new Thread(this::write, "Output writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        current.length = count;
+        try
+        {
+            full.put(current);
+            handedOff++;
+            current = free.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while writing output");
+            System.exit(1);
+        }
+        buffer = current.text;
+        count = 0;
+    }
+
+    //writer thread: writes buffers in order, flushing the stream whenever it catches up
+    private void write()
+    {
+        try
+        {
+            while (true)
+            {
+                Chunk chunk = full.take();
+                out.write(chunk.text, 0, chunk.length);
+                if (full.isEmpty())
+                    out.flush();
+                free.put(chunk);
+                synchronized (this)
+                {
+                    written++;
+                    notifyAll();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+        catch (InterruptedException e)
+        {
+            // daemon thread, only interrupted as the program exits
+        }
+    }
+
+    private void fail(IOException e)
+    {
+        System.out.println("Error: could not write output: " + e.getMessage());
+        System.exit(1);
+    }
+}
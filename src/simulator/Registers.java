@@ -1,4 +1,8 @@
 package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 /** 
  * @author Michael Kepple
@@ -7,30 +11,43 @@ package simulator;
 public class Registers
 {
     protected long[] Regs; 
-    public String[] Qi;
+    public int[] Qi;      //tag of the producer each register waits for, Tags.NONE if none
     static final int REGS = 32;
+    Tags tags;            //names of the tags, shared with the functional units of the simulator
+    // producing tag -> bitmask of the registers waiting for its result
+    long[] renamed = new long[0];
+    // Physical register file, only allocated when renaming is enabled. Qi then holds the tag of
+    // the physical register a pending architectural register is mapped to instead of a station.
+    int[] map;            //architectural register -> physical register
+    long[] PRF;           //physical register values
+    int tagBase;          //tag of physical register 0, physical register i has tag tagBase + i
+    boolean[] pending;    //physical register still waiting for its result
+    boolean[] unmapped;   //physical register to be freed once its result is written
+    int[] freeList;       //stack of free physical registers
+    int freeCount;
+    String tagPrefix = "";  //keeps the physical register names of SMT contexts apart
     
     public Registers()
     {
         int i;
         Regs = new long[REGS];
-        Qi = new String[REGS];
+        Qi = new int[REGS];
         for (i = 0; i < REGS; i++)
         {
             Regs[i] = 0;
-            Qi[i] = null;
+            Qi[i] = Tags.NONE;
         }
     }
     
     /** isFree - determines if the register is available by checking the Qi field in the register
-     *    file. If another reservation station is computing a result bound for this register, the name
-     *    of the station will be stored in the Qi String array.
+     *    file. If another reservation station is computing a result bound for this register, the tag
+     *    of the station will be stored in the Qi array.
      * @param regNum - index of the register to check.
      * @return true if available, false otherwise.
      */
     public boolean isFree(int regNum)
     {
-    	return ((Qi[regNum] == null) ? true : false);
+    	return ((Qi[regNum] == Tags.NONE) ? true : false);
     }
     
     /** getRegister - returns the contents of the specified register
@@ -39,7 +56,12 @@ public class Registers
      */
     public long getRegister(int regNum)
     {
-    	return Regs[regNum];
+    	if (map == null)
+    		return Regs[regNum];
+    	// MIPS r0 always reads as zero, even after an instruction has targeted it
+    	if (this instanceof GPR && regNum == 0)
+    		return 0;
+    	return PRF[map[regNum]];
     }
     
     /** setRegister - sets designated register to designated value. Clears Qi field for that register
@@ -52,68 +74,265 @@ public class Registers
     	// MIPS r0 always holds the value zero.
     	if (this instanceof GPR && reg == 0)
     		return;
-    	Regs[reg] = value;
+    	if (map == null)
+    		Regs[reg] = value;
+    	else
+    		PRF[map[reg]] = value;
     }
     
-    /** getResStation - returns name of reservation station due to write to this register.
+    /** getResStation - returns tag of reservation station due to write to this register.
      *  @param regNum - register number
-     *  @return - name of reservation station.
+     *  @return - tag of reservation station, or of its physical register.
      */
-    public String getResStation(int regNum)
+    public int getResStation(int regNum)
     {
     	return Qi[regNum];
     }
     
     /** setResStation - denote that the specified Reservation Station is computing a result
-     *    that will be stored in the indicated register.
+     *    that will be stored in the indicated register. With renaming enabled the register is mapped
+     *    to a free physical register, which the caller must have checked for with hasFreeRegister.
      *  @param register - the register whose Qi field we want to set.
-     *  @param resStation - the reservation station that is computing the value to be put here.
+     *  @param resStation - tag of the reservation station that is computing the value to be put here.
+     *  @return the tag the station's result must be broadcast under: the station's, or that of the
+     *    physical register.
      */
-    public void setResStation(int register, String resStation)
+    public int setResStation(int register, int resStation)
     {
+    	if (map == null)
+    	{
+    		track(register, resStation);
+    		return resStation;
+    	}
+    	int old = map[register];
+    	int physical = freeList[--freeCount];
+    	map[register] = physical;
+    	pending[physical] = true;
+    	// Stations still waiting on the old register get its value from the CDB, so it can be
+    	// reused as soon as it holds its value
+    	if (pending[old])
+    		unmapped[old] = true;
+    	else
+    		release(old);
+    	track(register, tagBase + physical);
+    	return tagBase + physical;
+    }
+    
+    /** hasFreeRegister - whether a destination can be renamed. Always true without renaming.
+     *  @return false if every physical register is in use.
+     */
+    public boolean hasFreeRegister()
+    {
+    	return map == null || freeCount > 0;
+    }
+    
+    // points Qi of the register at a producing tag, keeping the index used by updateRegisterFile
+    private void track(int register, int resStation)
+    {
+    	// The earlier producer no longer writes this register
+    	if (Qi[register] != Tags.NONE)
+    		renamed[Qi[register]] &= ~(1L << register);
     	Qi[register] = resStation;
+    	if (resStation == Tags.NONE)
+    		return;
+    	if (resStation >= renamed.length)
+    		renamed = Arrays.copyOf(renamed, Math.max(2 * renamed.length, resStation + 1));
+    	renamed[resStation] |= 1L << register;
     }
     
-    /** updateRegisters - updates appropriate registers if data from CDB is bound for register
-     * @param paramCDB - Common Data Bus input
+    /** updateRegisterFile - updates the registers still waiting on the tag whose result is on the
+     *    CDB, found through the index kept by setResStation. With renaming enabled the result is written
+     *    once, to its physical register.
+     * @param cdb - Common Data Bus input
      */
     public void updateRegisterFile(CDB cdb)
     {
-    	// Only called once?
-    	for (int i = 0; i < REGS; i++)
+    	int physical = cdb.tag - tagBase;
+    	if (map != null && physical >= 0 && physical < PRF.length)
     	{
-    		if ((Qi[i] != null) && (Qi[i].equals(cdb.station)))
-    		{
-    			Qi[i] = null;
+    		PRF[physical] = cdb.result;
+    		pending[physical] = false;
+    		if (unmapped[physical])
+    			release(physical);
+    	}
+    	if (cdb.tag >= renamed.length || renamed[cdb.tag] == 0)
+    		return;
+    	long waiting = renamed[cdb.tag];
+    	renamed[cdb.tag] = 0;
+    	for (long mask = waiting; mask != 0; mask &= mask - 1)
+    	{
+    		int i = Long.numberOfTrailingZeros(mask);
+    		Qi[i] = Tags.NONE;
+    		if (map == null)
     			setRegister(i, cdb.result);
-    		}
     	}
     }
+    
+    /** enableRenaming - switches the register file to a physical register file of the given size.
+     *    Architectural register i starts out mapped to physical register i with its current value.
+     *  @param size - number of physical registers, more than the 32 architectural ones.
+     */
+    public void enableRenaming(int size)
+    {
+    	allocatePhysical(size);
+    	for (int i = 0; i < REGS; i++)
+    	{
+    		map[i] = i;
+    		PRF[i] = Regs[i];
+    	}
+    	for (int i = size - 1; i >= REGS; i--)
+    		freeList[freeCount++] = i;
+    }
+    
+    private void allocatePhysical(int size)
+    {
+    	map = new int[REGS];
+    	PRF = new long[size];
+    	pending = new boolean[size];
+    	unmapped = new boolean[size];
+    	freeList = new int[size];
+    	freeCount = 0;
+    	tagBase = tags.size();
+    	for (int i = 0; i < size; i++)
+    		tags.add(tagPrefix + ((this instanceof GPR) ? "PR" : "PF") + i);
+    }
+    
+    private void release(int physical)
+    {
+    	unmapped[physical] = false;
+    	freeList[freeCount++] = physical;
+    }
 
     //output contents of Register File
     public void dumpRow(int start, int count)
     {
         int i, k;
+        Output out = Output.getInstance();
         i = start;
         for (k = 0; k < count; k++, i++)
         {
-            if (Qi[i] != null)
-                System.out.print(Tools.pad(Qi[i], 16, " ", Direction.RIGHT) + " ");
+            if (Qi[i] != Tags.NONE)
+                out.pad(tags.name(Qi[i]), 16, ' ', Direction.RIGHT);
             else
-                System.out.print(Tools.pad(Long.toHexString(Regs[i]), 16, "0",
-                                 Direction.RIGHT) + " ");
+                out.hex(getRegister(i), 16);
+            out.print(' ');
         }
-        System.out.println();
+        out.println();
+    }
+
+    /** setRegisters - replaces every register value, used when switching from functional simulation.
+     *    Qi tags are left untouched.
+     *  @param values - new register values.
+     */
+    void setRegisters(long[] values)
+    {
+    	if (map == null)
+    		System.arraycopy(values, 0, Regs, 0, REGS);
+    	else
+    		for (int i = 0; i < REGS; i++)
+    			PRF[map[i]] = values[i];
+    }
+
+    /** save - writes register values and their Qi tags to a checkpoint. The physical register file
+     *    comes before the tags, whose names include those of the physical registers.
+     *  @param out - checkpoint stream
+     *  @throws IOException
+     */
+    void save(DataOutputStream out) throws IOException
+    {
+    	for (int i = 0; i < REGS; i++)
+    		out.writeLong(Regs[i]);
+    	out.writeInt((map == null) ? 0 : PRF.length);
+    	if (map != null)
+    	{
+    		for (int i = 0; i < REGS; i++)
+    			out.writeInt(map[i]);
+    		for (int i = 0; i < PRF.length; i++)
+    		{
+    			out.writeLong(PRF[i]);
+    			out.writeBoolean(pending[i]);
+    			out.writeBoolean(unmapped[i]);
+    		}
+    		out.writeInt(freeCount);
+    		for (int i = 0; i < freeCount; i++)
+    			out.writeInt(freeList[i]);
+    	}
+    	for (int i = 0; i < REGS; i++)
+    		tags.write(out, Qi[i]);
+    }
+
+    /** restore - reloads register values and Qi tags written by save, along with the physical
+     *    register file if the checkpoint was taken with renaming enabled.
+     *  @param in - checkpoint stream
+     *  @throws IOException
+     */
+    void restore(DataInputStream in) throws IOException
+    {
+    	for (int i = 0; i < REGS; i++)
+    		Regs[i] = in.readLong();
+    	int size = in.readInt();
+    	map = null;
+    	if (size > 0)
+    	{
+    		allocatePhysical(size);
+    		for (int i = 0; i < REGS; i++)
+    			map[i] = in.readInt();
+    		for (int i = 0; i < size; i++)
+    		{
+    			PRF[i] = in.readLong();
+    			pending[i] = in.readBoolean();
+    			unmapped[i] = in.readBoolean();
+    		}
+    		freeCount = in.readInt();
+    		for (int i = 0; i < freeCount; i++)
+    			freeList[i] = in.readInt();
+    	}
+    	Arrays.fill(renamed, 0);
+    	for (int i = 0; i < REGS; i++)
+    	{
+    		Qi[i] = Tags.NONE;
+    		track(i, tags.read(in));
+    	}
+    }
+
+    /** saveValues - writes only the architectural register values to a drained checkpoint, which
+     *    holds no tags and no physical register file so that any machine can resume from it.
+     *  @param out - checkpoint stream
+     *  @throws IOException
+     */
+    void saveValues(DataOutputStream out) throws IOException
+    {
+    	for (int i = 0; i < REGS; i++)
+    		out.writeLong(getRegister(i));
+    }
+
+    /** restoreValues - reloads the values written by saveValues into the current register file,
+     *    physical or not.
+     *  @param in - checkpoint stream
+     *  @throws IOException
+     */
+    void restoreValues(DataInputStream in) throws IOException
+    {
+    	long[] values = new long[REGS];
+    	for (int i = 0; i < REGS; i++)
+    		values[i] = in.readLong();
+    	setRegisters(values);
     }
 
     //These two functions are used by the GUI
     public long[] cloneRegs()
     {
-        return Regs.clone();
+        long[] values = new long[REGS];
+        for (int i = 0; i < REGS; i++)
+            values[i] = getRegister(i);
+        return values;
     }
 
     public String[] cloneQi()
     {
-        return Qi.clone();
+        String[] names = new String[REGS];
+        for (int i = 0; i < REGS; i++)
+            names[i] = (tags == null) ? null : tags.name(Qi[i]);
+        return names;
     }
 }
@@ -0,0 +1,189 @@
+package simulator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ResultCache holds the instructions and cycles of programs simulated on machine configurations,
+ * keyed by the hash of the program file and the hash of the configuration, and kept in a file from
+ * one run to the next. Points missing from it are simulated in parallel on a work-stealing pool,
+ * each on an isolated Core, and appended to the file.
+ */
+class ResultCache
+{
+	String file;
+	HashMap<String, long[]> results = new HashMap<String, long[]>();	// key -> {instructions, cycles}
+	HashMap<String, String> programHashes = new HashMap<String, String>();
+	int simulated;		// points simulated by this run
+	int cached;		// points found in the cache
+
+	/** ResultCache constructor - reads the results of earlier runs.
+	 *  @param file - cache file, created if it does not exist.
+	 *  @throws IOException
+	 */
+	ResultCache(String file) throws IOException
+	{
+		this.file = file;
+		if (!new File(file).exists())
+			return;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split(",");
+				if (fields.length == 4)
+					results.put(fields[0] + "," + fields[1],
+						new long[] {Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/** get - result of a program on a configuration.
+	 *  @param program - hex file.
+	 *  @param config - machine.
+	 *  @return {instructions, cycles}, or null if the point has not been simulated.
+	 *  @throws IOException
+	 */
+	long[] get(String program, MachineConfig config) throws IOException
+	{
+		return results.get(key(program, config));
+	}
+
+	/** evaluate - simulates every program on every configuration not in the cache yet and adds
+	 *    the results to it.
+	 *  @param programs - hex files.
+	 *  @param configs - machines.
+	 *  @throws IOException
+	 */
+	void evaluate(List<String> programs, List<MachineConfig> configs) throws IOException
+	{
+		List<String> keys = new ArrayList<String>();
+		HashSet<String> pending = new HashSet<String>();
+		List<String> missingPrograms = new ArrayList<String>();
+		List<MachineConfig> missingConfigs = new ArrayList<MachineConfig>();
+		for (String program : programs)
+			for (MachineConfig config : configs)
+			{
+				String key = key(program, config);
+				if (results.containsKey(key))
+					cached++;
+				if (results.containsKey(key) || !pending.add(key))
+					continue;
+				keys.add(key);
+				missingPrograms.add(program);
+				missingConfigs.add(config);
+			}
+		long[][] points = new long[keys.size()][];
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.invoke(new Points(missingPrograms, missingConfigs, points, 0, keys.size()));
+		pool.shutdown();
+		BufferedWriter out = new BufferedWriter(new FileWriter(file, true));
+		try
+		{
+			for (int i = 0; i < keys.size(); i++)
+			{
+				results.put(keys.get(i), points[i]);
+				out.write(keys.get(i) + "," + points[i][0] + "," + points[i][1]);
+				out.newLine();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		simulated += keys.size();
+	}
+
+	/** simulate - runs one program to completion on an isolated core.
+	 *  @param program - hex file to load.
+	 *  @param config - machine to model.
+	 *  @return {instructions issued, clock cycles}.
+	 *  @throws IOException
+	 */
+	static long[] simulate(String program, MachineConfig config) throws IOException
+	{
+		Core core = new Core(0, config, true);
+		core.enter();
+		try
+		{
+			core.memory.loadMemory(program);
+			core.simulator.run();
+			return new long[] {core.simulator.getIssuedCount(), core.clock.get()};
+		}
+		finally
+		{
+			Core.leave();
+		}
+	}
+
+	// cache key of a point
+	private String key(String program, MachineConfig config) throws IOException
+	{
+		String hash = programHashes.get(program);
+		if (hash == null)
+		{
+			hash = Tools.hash(Files.readAllBytes(Paths.get(program)));
+			programHashes.put(program, hash);
+		}
+		return hash + "," + config.hash();
+	}
+
+	// Simulates a range of the missing points, splitting it in half until a single point is left
+	private static class Points extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		List<String> programs;
+		List<MachineConfig> configs;
+		long[][] results;
+		int first;
+		int last;
+
+		Points(List<String> programs, List<MachineConfig> configs, long[][] results, int first, int last)
+		{
+			this.programs = programs;
+			this.configs = configs;
+			this.results = results;
+			this.first = first;
+			this.last = last;
+		}
+
+		protected void compute()
+		{
+			if (last - first > 1)
+			{
+				int middle = (first + last) / 2;
+				invokeAll(new Points(programs, configs, results, first, middle),
+					new Points(programs, configs, results, middle, last));
+				return;
+			}
+			if (last == first)
+				return;
+			try
+			{
+				results[first] = simulate(programs.get(first), configs.get(first));
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("could not load " + programs.get(first), e);
+			}
+		}
+	}
+}
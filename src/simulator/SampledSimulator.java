@@ -0,0 +1,177 @@
+package simulator;
+import java.io.IOException;
+
+/**
+ * SampledSimulator alternates the FunctionalSimulator with detailed windows of the Tomasulo Simulator.
+ * Every period instructions, the pipeline is warmed up for warmup instructions and then timed from
+ * the issue of the next measure instructions until they have written; the rest of the period is
+ * fast-forwarded functionally. The CPI measured in the detailed windows is extrapolated to the whole
+ * program.
+ */
+public class SampledSimulator
+{
+	Simulator detailed;
+	FunctionalSimulator functional;
+	long warmup;
+	long measure;
+	long period;
+
+	// Per-window measurements
+	int windows;
+	double cpiSum;
+	double cpiSquares;
+	long measuredInstructions;
+	long measuredCycles;
+	long detailedInstructions;	// every instruction issued by the detailed simulator
+	long lastInstructions;		// the window recorded last
+	long lastCycles;
+
+	// Two-sided 95% critical values of Student's t for 1 to 30 degrees of freedom
+	static final double[] T95 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262,
+		2.228, 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074,
+		2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+	/** SampledSimulator constructor - loads the program and sets the sampling parameters.
+	 *  @param file - name of the hex file to load.
+	 *  @param warmup - instructions simulated in detail before each measurement.
+	 *  @param measure - instructions timed in each measurement.
+	 *  @param period - instructions from the start of one detailed window to the next.
+	 *  @throws IOException
+	 */
+	public SampledSimulator(String file, long warmup, long measure, long period) throws IOException
+	{
+		this(file, warmup, measure, period, new MachineConfig());
+	}
+
+	/** SampledSimulator constructor - loads the program and sets the sampling parameters.
+	 *  @param file - name of the hex file to load.
+	 *  @param warmup - instructions simulated in detail before each measurement.
+	 *  @param measure - instructions timed in each measurement.
+	 *  @param period - instructions from the start of one detailed window to the next.
+	 *  @param config - machine the detailed windows model.
+	 *  @throws IOException
+	 */
+	public SampledSimulator(String file, long warmup, long measure, long period, MachineConfig config) throws IOException
+	{
+		if (measure <= 0 || warmup < 0 || period < warmup + measure)
+			throw new IllegalArgumentException("sampling requires measure > 0 and period >= warmup + measure");
+		detailed = new Simulator(file, false, config);
+		functional = new FunctionalSimulator(0);
+		this.warmup = warmup;
+		this.measure = measure;
+		this.period = period;
+	}
+
+	/** simulate - runs the whole program in alternating functional and detailed phases, then dumps the
+	 *    final architectural state and the extrapolated timing.
+	 */
+	public void simulate()
+	{
+		boolean handOff = true;		// the state is in the functional simulator, not the detailed one
+		while (true)
+		{
+			if (handOff)
+			{
+				functional.run(period - warmup - measure);
+				if (functional.halted())
+					break;
+				// Hand the architectural state to the detailed simulator
+				functional.storeState();
+				Simulator.setPC(functional.getPC());
+			}
+			long start = detailed.getIssuedCount();
+			detailed.runInstructions(warmup);
+			long measureStart = detailed.getIssuedCount();
+			long cycles = detailed.runInstructions(measure);
+			long instructions = detailed.getIssuedCount() - measureStart;
+			// A window is timed until its instructions have written, so the drain counts towards it.
+			// Without fast-forward the next window carries on from this one and nothing is drained
+			// until the program halts, which makes the windows add up to a full detailed run.
+			handOff = period > warmup + measure;
+			if (handOff || detailed.halt)
+				cycles += detailed.drain();
+			detailedInstructions += detailed.getIssuedCount() - start;
+			// A window cut short by the halt is too small to stand alone and joins the one before
+			if (instructions > 0 && instructions < measure && windows > 0)
+				merge(instructions, cycles);
+			else if (instructions > 0)
+				record(instructions, cycles);
+			if (detailed.halt)
+				break;
+			// Hand the drained state back to the functional simulator
+			if (handOff)
+				functional.loadState(Simulator.getPC());
+		}
+		if (functional.halted())
+			functional.storeState();
+		Memory.getInstance().dump();
+		GPR.getInstance().dump();
+		FPR.getInstance().dump();
+		report();
+	}
+
+	/** record - adds one measurement window to the statistics.
+	 *  @param instructions - instructions issued during the window.
+	 *  @param cycles - clock cycles from the start of the window until its instructions had written.
+	 */
+	void record(long instructions, long cycles)
+	{
+		double cpi = (double)cycles / instructions;
+		windows++;
+		cpiSum += cpi;
+		cpiSquares += cpi * cpi;
+		measuredInstructions += instructions;
+		measuredCycles += cycles;
+		lastInstructions = instructions;
+		lastCycles = cycles;
+	}
+
+	/** merge - adds a window to the one recorded last, replacing it in the statistics.
+	 *  @param instructions - instructions issued during the window.
+	 *  @param cycles - clock cycles from the start of the window until its instructions had written.
+	 */
+	void merge(long instructions, long cycles)
+	{
+		double cpi = (double)lastCycles / lastInstructions;
+		windows--;
+		cpiSum -= cpi;
+		cpiSquares -= cpi * cpi;
+		measuredInstructions -= lastInstructions;
+		measuredCycles -= lastCycles;
+		record(lastInstructions + instructions, lastCycles + cycles);
+	}
+
+	/** report - prints the extrapolated clock cycles and IPC with 95% confidence intervals.
+	 */
+	void report()
+	{
+		Output out = Output.getInstance();
+		long total = functional.getInstructionCount() + detailedInstructions;
+		out.println("Sampling: warm-up " + warmup + ", measurement " + measure + ", period " + period);
+		out.println("Total instructions: " + total + " (" + detailedInstructions + " in detail)");
+		if (windows == 0)
+		{
+			out.println("No measurement window completed; program too short for this period");
+			out.flush();
+			return;
+		}
+		double mean = cpiSum / windows;
+		double half = 0;
+		if (windows > 1)
+		{
+			double variance = (cpiSquares - windows * mean * mean) / (windows - 1);
+			double t = (windows - 1 <= T95.length) ? T95[windows - 2] : 1.960;
+			half = t * Math.sqrt(Math.max(variance, 0) / windows);
+		}
+		out.println("Measurement windows: " + windows + ", " + measuredInstructions +
+			" instructions in " + measuredCycles + " cycles");
+		// No machine issues more than issueWidth instructions a cycle, which bounds the CPI from below
+		double low = Math.max(mean - half, 1.0 / detailed.issueWidth);
+		double high = mean + half;
+		out.println(String.format("Estimated clock cycles: %.0f (%.0f - %.0f, 95%% confidence)", mean * total,
+			low * total, high * total));
+		out.println(String.format("Estimated CPI: %.4f (%.4f - %.4f)", mean, low, high));
+		out.println(String.format("Estimated IPC: %.4f (%.4f - %.4f)", 1 / mean, 1 / high, 1 / low));
+		out.flush();
+	}
+}
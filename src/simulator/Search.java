@@ -0,0 +1,335 @@
+package simulator;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Search looks for good machines for a set of programs without simulating a whole grid. The
+ * latencies are those of the starting machine; the search changes the number of reservation
+ * stations of each functional unit, the CDB width and the issue width, one step at a time, and
+ * keeps every machine within a cost budget. Cost is measured on the functional units a Simulator
+ * builds for the machine: one for every unit, reservation station, CDB and issue slot. A machine is
+ * scored by the IPC of the whole program set, and each batch of candidates is simulated in parallel
+ * through a ResultCache, so machines met again, in this search or an earlier one, cost nothing.
+ * Every machine evaluated counts towards the Pareto front of IPC against cost that is reported.
+ */
+public class Search
+{
+	static final int POPULATION = 16;
+	static final int GENERATIONS = 12;
+	static final int SEED = 1;	// the search is repeatable, as the simulations are
+
+	List<String> programs;
+	MachineConfig start;
+	int budget;
+	SearchStrategy strategy;
+	ResultCache cache;
+	Random random = new Random(SEED);
+	HashMap<String, Candidate> seen = new HashMap<String, Candidate>();	// config hash -> candidate
+	List<Candidate> evaluated = new ArrayList<Candidate>();	// in the order first evaluated
+
+	/** Search constructor - sets up a search.
+	 *  @param programs - hex files of the workload.
+	 *  @param start - machine whose latencies are kept, and where hill climbing starts.
+	 *  @param budget - largest cost of a machine.
+	 *  @param strategy - HILL_CLIMBING or GENETIC.
+	 */
+	public Search(List<String> programs, MachineConfig start, int budget, SearchStrategy strategy)
+	{
+		this.programs = programs;
+		this.start = new MachineConfig(start);
+		this.budget = budget;
+		this.strategy = strategy;
+		MachineConfig smallest = new MachineConfig(start);
+		for (int p = MachineConfig.INTEGER_STATIONS; p <= MachineConfig.ISSUE_WIDTH; p++)
+			smallest.values[p] = 1;
+		if (cost(smallest) > budget)
+			throw new IllegalArgumentException("the smallest machine costs " + cost(smallest) + ", over the budget");
+	}
+
+	/** run - searches, then writes the Pareto front as a CSV table and prints it.
+	 *  @param csvFile - table of the front, with cost, every parameter, instructions, cycles and IPC.
+	 *  @param cacheFile - cache of earlier results, created if it does not exist.
+	 *  @throws IOException
+	 */
+	public void run(String csvFile, String cacheFile) throws IOException
+	{
+		cache = new ResultCache(cacheFile);
+		if (strategy == SearchStrategy.HILL_CLIMBING)
+			climb();
+		else
+			evolve();
+		List<Candidate> front = front(evaluated);
+		writeTable(csvFile, front);
+		Output out = Output.getInstance();
+		out.println("Search: " + evaluated.size() + " machines within cost " + budget + ", " + cache.cached +
+			" simulations from the cache, " + cache.simulated + " simulated; front in " + csvFile);
+		out.println("Pareto front:");
+		for (Candidate candidate : front)
+			out.println(String.format("cost %3d  IPC %.4f  %s", candidate.cost, candidate.ipc(),
+				structure(candidate.config)));
+		out.flush();
+	}
+
+	/** climb - steepest ascent: moves to the best neighbour while it raises the IPC, or keeps the IPC
+	 *    at a lower cost. Starts from the starting machine, shrunk to the budget if needed.
+	 *  @throws IOException
+	 */
+	void climb() throws IOException
+	{
+		List<MachineConfig> first = new ArrayList<MachineConfig>();
+		first.add(repair(new MachineConfig(start)));
+		Candidate current = evaluate(first).get(0);
+		while (true)
+		{
+			Candidate best = current;
+			for (Candidate neighbour : evaluate(neighbours(current.config)))
+				if (neighbour.ipc() > best.ipc() || neighbour.ipc() == best.ipc() && neighbour.cost < best.cost)
+					best = neighbour;
+			if (best == current)
+				return;
+			current = best;
+		}
+	}
+
+	/** evolve - a genetic search. Each generation breeds as many children as there are machines in
+	 *    the population, by uniform crossover of parents picked by tournament and a mutation of
+	 *    about one parameter, and keeps the best of parents and children by Pareto rank, then IPC.
+	 *  @throws IOException
+	 */
+	void evolve() throws IOException
+	{
+		List<MachineConfig> initial = new ArrayList<MachineConfig>();
+		initial.add(repair(new MachineConfig(start)));
+		while (initial.size() < POPULATION)
+		{
+			MachineConfig config = new MachineConfig(start);
+			for (int p = MachineConfig.INTEGER_STATIONS; p <= MachineConfig.ISSUE_WIDTH; p++)
+				config.values[p] = 1 + random.nextInt(p < MachineConfig.CDB_WIDTH ? 8 : 3);
+			initial.add(repair(config));
+		}
+		List<Candidate> population = survivors(evaluate(initial));
+		int parameters = MachineConfig.ISSUE_WIDTH - MachineConfig.INTEGER_STATIONS + 1;
+		for (int generation = 0; generation < GENERATIONS; generation++)
+		{
+			List<MachineConfig> children = new ArrayList<MachineConfig>();
+			while (children.size() < POPULATION)
+			{
+				MachineConfig a = tournament(population).config;
+				MachineConfig b = tournament(population).config;
+				MachineConfig child = new MachineConfig(a);
+				for (int p = MachineConfig.INTEGER_STATIONS; p <= MachineConfig.ISSUE_WIDTH; p++)
+				{
+					if (random.nextBoolean())
+						child.values[p] = b.values[p];
+					if (random.nextInt(parameters) == 0)
+						step(child, p, random.nextBoolean() ? 1 : -1);
+				}
+				children.add(repair(child));
+			}
+			List<Candidate> pool = new ArrayList<Candidate>(population);
+			for (Candidate child : evaluate(children))
+				if (!pool.contains(child))
+					pool.add(child);
+			population = survivors(pool);
+		}
+	}
+
+	/** evaluate - simulates the workload on every machine not evaluated yet.
+	 *  @param configs - machines, all within the budget.
+	 *  @return the candidate of each machine, in order.
+	 *  @throws IOException
+	 */
+	List<Candidate> evaluate(List<MachineConfig> configs) throws IOException
+	{
+		List<MachineConfig> fresh = new ArrayList<MachineConfig>();
+		for (MachineConfig config : configs)
+			if (!seen.containsKey(config.hash()))
+			{
+				seen.put(config.hash(), null);
+				fresh.add(config);
+			}
+		cache.evaluate(programs, fresh);
+		for (MachineConfig config : fresh)
+		{
+			Candidate candidate = new Candidate(config, cost(config));
+			for (String program : programs)
+			{
+				long[] result = cache.get(program, config);
+				candidate.instructions += result[0];
+				candidate.cycles += result[1];
+			}
+			seen.put(config.hash(), candidate);
+			evaluated.add(candidate);
+		}
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (MachineConfig config : configs)
+			candidates.add(seen.get(config.hash()));
+		return candidates;
+	}
+
+	/** neighbours - the machines one station, CDB or issue slot larger or smaller that are within the
+	 *    budget.
+	 *  @param config - machine.
+	 *  @return its neighbours.
+	 */
+	List<MachineConfig> neighbours(MachineConfig config)
+	{
+		List<MachineConfig> neighbours = new ArrayList<MachineConfig>();
+		for (int p = MachineConfig.INTEGER_STATIONS; p <= MachineConfig.ISSUE_WIDTH; p++)
+			for (int delta = -1; delta <= 1; delta += 2)
+			{
+				MachineConfig neighbour = new MachineConfig(config);
+				if (step(neighbour, p, delta) && cost(neighbour) <= budget)
+					neighbours.add(neighbour);
+			}
+		return neighbours;
+	}
+
+	// Changes a parameter by delta, unless that takes it out of range; true if it changed
+	private boolean step(MachineConfig config, int parameter, int delta)
+	{
+		try
+		{
+			config.set(MachineConfig.NAMES[parameter], config.values[parameter] + delta);
+			return true;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+	}
+
+	// Shrinks a machine to the budget, taking a station, CDB or issue slot off a random parameter at a time
+	private MachineConfig repair(MachineConfig config)
+	{
+		int parameters = MachineConfig.ISSUE_WIDTH - MachineConfig.INTEGER_STATIONS + 1;
+		while (cost(config) > budget)
+			step(config, MachineConfig.INTEGER_STATIONS + random.nextInt(parameters), -1);
+		return config;
+	}
+
+	// Cost of a machine, counted on the functional units a Simulator builds for it
+	private static int cost(MachineConfig config)
+	{
+		return new Simulator(config).hardwareCost();
+	}
+
+	// The better of two random members of the population by Pareto rank, then IPC
+	private Candidate tournament(List<Candidate> population)
+	{
+		Candidate a = population.get(random.nextInt(population.size()));
+		Candidate b = population.get(random.nextInt(population.size()));
+		return (a.compareTo(b) <= 0) ? a : b;
+	}
+
+	// The POPULATION best candidates, ranked by Pareto front, then IPC
+	private List<Candidate> survivors(List<Candidate> candidates)
+	{
+		List<Candidate> remaining = new ArrayList<Candidate>(candidates);
+		for (int rank = 0; !remaining.isEmpty(); rank++)
+		{
+			List<Candidate> front = front(remaining);
+			for (Candidate candidate : front)
+				candidate.rank = rank;
+			remaining.removeAll(front);
+		}
+		List<Candidate> ranked = new ArrayList<Candidate>(candidates);
+		Collections.sort(ranked);
+		return new ArrayList<Candidate>(ranked.subList(0, Math.min(POPULATION, ranked.size())));
+	}
+
+	/** front - the candidates no other candidate dominates, with an IPC as high at no more cost and
+	 *    better in one of the two. Of candidates with the same cost and IPC the first is kept.
+	 *  @param candidates - machines evaluated.
+	 *  @return the Pareto front by increasing cost.
+	 */
+	static List<Candidate> front(List<Candidate> candidates)
+	{
+		List<Candidate> front = new ArrayList<Candidate>();
+		for (Candidate candidate : candidates)
+		{
+			boolean dominated = false;
+			for (Candidate other : candidates)
+				if (other.ipc() >= candidate.ipc() && other.cost <= candidate.cost &&
+					(other.ipc() > candidate.ipc() || other.cost < candidate.cost))
+					dominated = true;
+			for (Candidate kept : front)
+				if (kept.ipc() == candidate.ipc() && kept.cost == candidate.cost)
+					dominated = true;
+			if (!dominated)
+				front.add(candidate);
+		}
+		Collections.sort(front, (a, b) -> a.cost - b.cost);
+		return front;
+	}
+
+	// The parameters the search changes, as name=value pairs
+	private static String structure(MachineConfig config)
+	{
+		StringBuilder text = new StringBuilder();
+		for (int p = MachineConfig.INTEGER_STATIONS; p <= MachineConfig.ISSUE_WIDTH; p++)
+			text.append((p > MachineConfig.INTEGER_STATIONS) ? "," : "").append(MachineConfig.NAMES[p])
+				.append('=').append(config.values[p]);
+		return text.toString();
+	}
+
+	private void writeTable(String csvFile, List<Candidate> front) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(csvFile));
+		try
+		{
+			out.write("cost," + String.join(",", MachineConfig.NAMES) + ",instructions,cycles,ipc");
+			out.newLine();
+			for (Candidate candidate : front)
+			{
+				out.write(String.valueOf(candidate.cost));
+				for (int value : candidate.config.values)
+					out.write("," + value);
+				out.write("," + candidate.instructions + "," + candidate.cycles + "," +
+					String.format("%.4f", candidate.ipc()));
+				out.newLine();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	// A machine evaluated on the whole workload
+	static class Candidate implements Comparable<Candidate>
+	{
+		MachineConfig config;
+		int cost;
+		long instructions;	// over every program
+		long cycles;
+		int rank;	// Pareto front the candidate was on when last ranked, 0 the best
+
+		Candidate(MachineConfig config, int cost)
+		{
+			this.config = config;
+			this.cost = cost;
+		}
+
+		double ipc()
+		{
+			return (double)instructions / cycles;
+		}
+
+		// Lower rank first, then higher IPC, then lower cost
+		public int compareTo(Candidate other)
+		{
+			if (rank != other.rank)
+				return rank - other.rank;
+			if (ipc() != other.ipc())
+				return (ipc() > other.ipc()) ? -1 : 1;
+			return cost - other.cost;
+		}
+	}
+}
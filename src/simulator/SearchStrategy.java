@@ -0,0 +1,7 @@
+package simulator;
+//how a design-space search moves through the machine configurations
+public enum SearchStrategy
+{
+    HILL_CLIMBING,  //steepest ascent from the starting machine to a local optimum
+    GENETIC;        //a population evolved by crossover and mutation
+}
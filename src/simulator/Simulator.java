@@ -1,5 +1,6 @@
 package simulator;
 import functionalUnits.*;
+import functionalUnits.FunctionalUnit;
 import java.io.*;
 import java.util.*;
 import tsgui.*;
@@ -12,8 +13,33 @@ import tsgui.*;
  */
 public class Simulator
 {
-	static int PC;
+	static Simulator active;	// the simulator getPC and setPC act on outside a multicore run
+	int PC;
 	boolean halt;
+	int instruction;	// most recently fetched instruction
+	long issued;		// number of instructions issued, including halt and dump
+	boolean draining;	// set while in-flight instructions are drained without issuing
+	LockstepChecker checker;	// golden model compared against, null unless enabled
+	CPIStack cpi = new CPIStack();
+	int cdbLosers;		// bit per CPIStack unit that lost CDB arbitration this cycle
+	CDB[] cdbs;		// results broadcast this cycle, one per CDB
+	int issueWidth;		// instructions issued per cycle at most
+	boolean renameStall;	// set when the last issue failed for lack of a physical register
+	TraceReader trace;	// instruction stream to issue from instead of memory, null unless trace-driven
+	boolean latencies;	// print latency histograms in the final report
+	String latencyFile;	// CSV file the histograms are exported to, null if none
+	boolean dataflow;	// record dependences at issue and report the critical path
+	boolean oracle;		// limit study: unbounded units, CDBs and issue, branches known from the trace
+	// Hardware contexts sharing the functional units under SMT, null otherwise. PC and halt then
+	// belong to the context being issued from, and each context keeps its own between issues.
+	Core[] contexts;
+	int[] contextPC;
+	boolean[] contextHalted;
+	long[] contextIssued;
+	FetchPolicy fetchPolicy;
+	int nextContext;	// context round robin offers the issue slot to first
+	int[] fetchOrder;	// contexts in the order they are offered the issue slot this cycle
+	int[] icount;		// instructions each context has in reservation stations
 	// Functional Units
 	IntUnit intUnit;
 	FPAdder fadder;
@@ -21,77 +47,711 @@ public class Simulator
 	BranchUnit branchUnit;
 	FPDiv fdiv;
 	FPMult fmult;
+	Tags tags = new Tags();	// numbers of the stations and physical registers results are broadcast under
 	
     //both of these are for the GUI 
     boolean gui;
-    private ArrayList<CycleSnapShot> snapshots = null;
+    private SnapshotQueue snapshots = null;
+    static final int SNAPSHOT_QUEUE = 256;	// frames the simulation may run ahead of the GUI
+    FrameWriter frames = null;	// records the snapshots for a later replay, null if not requested
+    
+    // Cycle at which to write a checkpoint, -1 if none requested
+    int checkpointCycle = -1;
+    String checkpointFile;
+    boolean architectural;	// the checkpoint is taken once the pipeline has drained
+    boolean checkpointDrain;	// set while draining for an architectural checkpoint
+    static final int CHECKPOINT_MAGIC = 0x54534350; // "TSCP"
+    static final int CHECKPOINT_VERSION = 6;
 
     public Simulator(String file, boolean flag) throws IOException
     {
+    	this(file, flag, new MachineConfig());
+    }
+    
+    /** Simulator constructor - loads the program and models the given machine.
+     *  @param file - name of the hex file to load.
+     *  @param flag - true to collect snapshots for the GUI.
+     *  @param config - latencies, station counts, CDB and issue widths of the machine.
+     *  @throws IOException
+     */
+    public Simulator(String file, boolean flag, MachineConfig config) throws IOException
+    {
+    	this(config);
     	Memory me = Memory.getInstance();
     	me.loadMemory(file);
-    	
-        //create your functional units in here
-    	intUnit = new IntUnit();
-    	fadder = new FPAdder();
-    	memUnit = new MemUnit();
-    	branchUnit = new BranchUnit();
-    	fdiv = new FPDiv();
-    	fmult = new FPMult();
+    	GPR.getInstance().tags = FPR.getInstance().tags = tags;
         gui = flag;
+        if (gui)
+        	snapshots = new SnapshotQueue(SNAPSHOT_QUEUE);
+        active = this;
+    }
+    
+    /** Simulator constructor - creates the functional units of a core whose program is already in memory.
+     *  @param config - latencies, station counts, CDB and issue widths of the machine.
+     */
+    Simulator(MachineConfig config)
+    {
+        //create your functional units in here
+    	intUnit = new IntUnit(config.get(MachineConfig.INTEGER_STATIONS), config.get(MachineConfig.INTEGER_LATENCY));
+    	fadder = new FPAdder(config.get(MachineConfig.FPADD_STATIONS), config.get(MachineConfig.FPADD_LATENCY));
+    	memUnit = new MemUnit(config.get(MachineConfig.LOAD_STATIONS), config.get(MachineConfig.STORE_STATIONS),
+    		config.get(MachineConfig.MEMORY_LATENCY));
+    	branchUnit = new BranchUnit(config.get(MachineConfig.BRANCH_STATIONS), config.get(MachineConfig.BRANCH_LATENCY));
+    	fdiv = new FPDiv(config.get(MachineConfig.FPDIV_STATIONS), config.get(MachineConfig.FPDIV_LATENCY));
+    	fmult = new FPMult(config.get(MachineConfig.FPMULT_STATIONS), config.get(MachineConfig.FPMULT_LATENCY));
+    	cdbs = new CDB[config.get(MachineConfig.CDB_WIDTH)];
+    	issueWidth = config.get(MachineConfig.ISSUE_WIDTH);
+    	FunctionalUnit[] units = {intUnit, fadder, fmult, fdiv, memUnit, branchUnit};
+    	for (FunctionalUnit unit : units)
+    		unit.number(tags);
+        PC = 0;
     }
     
     /** simulate - Main Tomasulo simulation loop. Handles Issue, Execute, Write of instructions.
      */
     public void simulate()
     {
-        PC = 0;
-        int instruction = 0;
-        boolean stall = false;
-        boolean branch = false;
+        // The GUI shows frames as the run publishes them, and holds the run back when it falls behind
+        if (gui)
+        	TSGui.show(snapshots);
+        run();
+        if (gui)
+        	snapshots.close();
+        if (frames != null)
+        	frames.close();
+        // A trace-driven run computes no values, so only its timing is reported
+        if (trace == null)
+        	Memory.getInstance().dump();
+        report();
+        Output.getInstance().flush();
+        if (checker != null)
+        	checker.report();
+    }
+    
+    /** run - simulates cycles until the program has halted and the functional units have finished.
+     */
+    void run()
+    {
         while (halt == false || !finished())
+        	cycle();
+    }
+    
+    /** report - dumps the register files, the status table, the clock cycles and the CPI stack at the
+     *    end of a run.
+     */
+    void report()
+    {
+        Output out = Output.getInstance();
+        if (trace == null && contexts == null)
         {
-        	String station = "";
-        	long result = 0;
-			CDB cdb = write(); 
-            branch = execute();
-            if ((!halt) && (!branch))
-            {
-            	instruction = Memory.getInstance().getWord(PC);
-            	// stall set to true if issue fails
-            	stall = issue(instruction);
-            	if ((!halt) && (!stall))
-            		PC += 4;		
-            }
-            updateReservationStations(cdb);
-            clearReservationStations();
-        	Clock.getInstance().increment();
-            if (cdb != null)
-            {
-            	station = cdb.station;
-            	result = cdb.result;
-            }
-            if (gui) 
-            	addSnapShot(instruction, PC, result, station);
+        	GPR.getInstance().dump();
+        	FPR.getInstance().dump();
         }
-        //if (gui == true) 
-        //	new TSGui(snapshots);
-        Memory.getInstance().dump();
-        GPR.getInstance().dump();
-        FPR.getInstance().dump();
+        else if (trace == null)
+        	for (Core context : contexts)
+        	{
+        		out.println("Context " + context.id + ":");
+        		context.gpr.dump();
+        		context.fpr.dump();
+        	}
         StatusTable.getInstance().dump();
-        System.out.println("Total clock cycles: " + Clock.getInstance().get());
+        out.println("Total clock cycles: " + Clock.getInstance().get());
+        cpi.report(Clock.getInstance().get(), issued);
+        if (contexts != null)
+        	for (Core context : contexts)
+        		out.println(String.format("Context %d: %d instructions, IPC %.4f", context.id,
+        			contextIssued[context.id], (double)contextIssued[context.id] / Clock.getInstance().get()));
+        if (latencies)
+        {
+        	LatencyReport histograms = new LatencyReport(StatusTable.getInstance());
+        	histograms.print();
+        	if (latencyFile != null)
+        		try
+        		{
+        			histograms.export(latencyFile);
+        		}
+        		catch (IOException e)
+        		{
+        			out.flush();
+        			System.out.println("Error: could not write latency histograms to " + latencyFile);
+        			System.exit(1);
+        		}
+        }
+        if (dataflow)
+        	new CriticalPath(StatusTable.getInstance()).print(Clock.getInstance().get());
+    }
+    
+    /** cycle - simulates a single clock cycle: write, execute, then issue up to issueWidth instructions
+     *    unless issue is blocked by a halt, an executing branch, or a drain request. Issue stops early at
+     *    the first stall, and after a branch since the instructions following it are not known yet.
+     */
+    void cycle()
+    {
+    	String station = "";
+    	long result = 0;
+		int written = write(); 
+        boolean branch = execute();
+        if (contexts != null)
+        	issueContexts();
+        else if (halt || draining)
+        	cpi.draining();
+        else if (branch)
+        	cpi.branchInFlight();
+        else
+        {
+        	int count = 0;
+        	boolean stall = false;
+        	while (count < issueWidth && !halt && !stall)
+        	{
+        		if (trace == null)
+        			instruction = Memory.getInstance().getWord(PC);
+        		else
+        		{
+        			PC = trace.pc;
+        			instruction = trace.instruction;
+        			memUnit.setTraceAddress(trace.address);
+        		}
+        		int fetched = PC;
+        		int entries = StatusTable.getInstance().size();
+        		// stall set to true if issue fails
+        		stall = issue(instruction);
+        		if ((!halt) && (!stall))
+        			PC += 4;
+        		if (halt || !stall)
+        		{
+        			if (dataflow && StatusTable.getInstance().size() > entries)
+        				recordDependences(fetched);
+        			count++;
+        			issued++;
+        			if (checker != null)
+        				checker.issued(fetched, instruction);
+        			if (trace != null && !halt)
+        				trace.next();
+        			if (CPIStack.unitOf(instruction) == CPIStack.BRANCH && !oracle)
+        				break;
+        		}
+        	}
+        	if (count > 0)
+        		cpi.issued();
+        	else
+        		attributeStall(CPIStack.unitOf(instruction));
+        }
+        for (int i = 0; i < written; i++)
+        	updateReservationStations(cdbs[i]);
+        clearReservationStations();
+    	Clock.getInstance().increment();
+    	if (Clock.getInstance().get() == checkpointCycle && !architectural)
+    		writeCheckpoint();
+    	else if (Clock.getInstance().get() == checkpointCycle)
+    		draining = checkpointDrain = true;
+    	if (checkpointDrain && drained())
+    	{
+    		draining = checkpointDrain = false;
+    		writeCheckpoint();
+    	}
+        if (written > 0)
+        {
+        	station = cdbs[0].station;
+        	result = cdbs[0].result;
+        }
+        if (gui || frames != null) 
+        	addSnapShot(instruction, PC, result, station);
+    }
+    
+    /** recordDependences - records in the status table where the instruction just issued came from and
+     *    which in-flight instructions produce the operands its reservation station waits for. Called
+     *    only when the issue added an entry to the status table; a halt or NOP adds none.
+     *  @param pc - address the instruction was fetched from.
+     */
+    private void recordDependences(int pc)
+    {
+    	StatusTable table = StatusTable.getInstance();
+    	FunctionalUnit[] units = {intUnit, fadder, fmult, fdiv, memUnit, branchUnit};
+    	for (FunctionalUnit unit : units)
+    	{
+    		Station station = unit.getStation(table.lastStation());
+    		if (station != null)
+    		{
+    			table.recordDependences(pc, tags.name(station.Qj), tags.name(station.Qk), tags.name(station.tag));
+    			return;
+    		}
+    	}
+    	table.recordDependences(pc, null, null, null);
+    }
+    
+    /** issueContexts - SMT issue: offers the issue slot to each context that has neither halted nor a
+     *    branch in flight, in the order the fetch policy gives, until one of them issues. A cycle in
+     *    which none issues is charged to the first context that stalled, else to branches or the drain.
+     */
+    void issueContexts()
+    {
+    	orderContexts();
+    	boolean branch = false;
+    	boolean stalled = false;
+    	int stalledUnit = -1;
+    	boolean stalledOnRename = false;
+    	for (int k = 0; k < contexts.length; k++)
+    	{
+    		int c = fetchOrder[k];
+    		if (contextHalted[c])
+    			continue;
+    		if (branchUnit.inFlight(c) > 0)
+    		{
+    			branch = true;
+    			continue;
+    		}
+    		int entries = StatusTable.getInstance().size();
+    		contexts[c].enter();
+    		setContext(c);
+    		PC = contextPC[c];
+    		halt = false;
+    		instruction = Memory.getInstance().getWord(PC);
+    		int fetched = PC;
+    		boolean stall = issue(instruction);
+    		Core.leave();
+    		if (dataflow && (halt || !stall) && StatusTable.getInstance().size() > entries)
+    			recordDependences(fetched);
+    		if (!halt && !stall)
+    			PC += 4;
+    		contextPC[c] = PC;
+    		contextHalted[c] = halt;
+    		if (halt || !stall)
+    		{
+    			issued++;
+    			contextIssued[c]++;
+    			cpi.issued();
+    			nextContext = (c + 1) % contexts.length;
+    			halt = allHalted();
+    			return;
+    		}
+    		if (!stalled)
+    		{
+    			stalled = true;
+    			stalledUnit = CPIStack.unitOf(instruction);
+    			stalledOnRename = renameStall;
+    		}
+    	}
+    	halt = allHalted();
+    	if (stalled)
+    	{
+    		renameStall = stalledOnRename;
+    		attributeStall(stalledUnit);
+    	}
+    	else if (branch)
+    		cpi.branchInFlight();
+    	else
+    		cpi.draining();
+    }
+    
+    // fills fetchOrder with the contexts in the order the fetch policy offers them the issue slot
+    private void orderContexts()
+    {
+    	int n = contexts.length;
+    	for (int k = 0; k < n; k++)
+    		fetchOrder[k] = (nextContext + k) % n;
+    	if (fetchPolicy != FetchPolicy.ICOUNT)
+    		return;
+    	for (int c = 0; c < n; c++)
+    		icount[c] = intUnit.inFlight(c) + fadder.inFlight(c) + memUnit.inFlight(c) +
+    			branchUnit.inFlight(c) + fdiv.inFlight(c) + fmult.inFlight(c);
+    	// Insertion sort keeps the round robin order among contexts with equal counts
+    	for (int k = 1; k < n; k++)
+    	{
+    		int c = fetchOrder[k];
+    		int j = k;
+    		for (; j > 0 && icount[fetchOrder[j - 1]] > icount[c]; j--)
+    			fetchOrder[j] = fetchOrder[j - 1];
+    		fetchOrder[j] = c;
+    	}
     }
     
+    // true once every context has issued its halt
+    private boolean allHalted()
+    {
+    	for (boolean halted : contextHalted)
+    		if (!halted)
+    			return false;
+    	return true;
+    }
+    
+    // tags the instructions inserted from now on with the context issuing them
+    private void setContext(int context)
+    {
+    	intUnit.setContext(context);
+    	fadder.setContext(context);
+    	memUnit.setContext(context);
+    	branchUnit.setContext(context);
+    	fdiv.setContext(context);
+    	fmult.setContext(context);
+    }
+    
+    /** attributeStall - charges a cycle in which issue failed because the unit's reservation
+     *    stations were all busy: to the CDB if the unit is holding a result that lost arbitration, to
+     *    memory ordering if loads and stores are waiting behind an older one, or to the stations.
+     *  @param unit - CPIStack index of the station group the instruction needed.
+     *    A failure to rename the destination is charged to the physical register file.
+     */
+    void attributeStall(int unit)
+    {
+    	if (renameStall)
+    		cpi.renameStall();
+    	else if ((cdbLosers & (1 << unit)) != 0)
+    		cpi.cdbWait(unit);
+    	else if ((unit == CPIStack.LOAD || unit == CPIStack.STORE) && memUnit.orderingBlocked())
+    		cpi.memoryOrdering();
+    	else
+    		cpi.stationsFull(unit);
+    }
+    
+    /** runInstructions - simulates cycles until count more instructions have issued or the program
+     *    halts. Instructions already in flight are left in flight.
+     *  @param count - number of instructions to issue.
+     *  @return number of clock cycles simulated.
+     */
+    long runInstructions(long count)
+    {
+    	long target = issued + count;
+    	int start = Clock.getInstance().get();
+    	while (issued < target && !halt)
+    		cycle();
+    	return Clock.getInstance().get() - start;
+    }
+    
+    /** drain - stops issuing and simulates cycles until every functional unit is empty, leaving the
+     *    architectural state in Memory, GPR and FPR with nothing pending.
+     *  @return number of clock cycles simulated.
+     */
+    long drain()
+    {
+    	int start = Clock.getInstance().get();
+    	draining = true;
+    	while (!drained())
+    		cycle();
+    	draining = false;
+    	return Clock.getInstance().get() - start;
+    }
+    
+    /** drained - unlike finished, checks every functional unit including branch, divide and multiply.
+     *  @return true if no reservation station of any unit is busy.
+     */
+    boolean drained()
+    {
+    	return finished() && branchUnit.finished() && fdiv.finished() && fmult.finished();
+    }
+    
+    /** getIssuedCount - number of instructions issued so far, counting halt and dump.
+     *  @return issued instruction count.
+     */
+    public long getIssuedCount()
+    {
+    	return issued;
+    }
+    
+    /** enableLockstep - checks every result and store of the run against a functional golden model
+     *    started from the current architectural state, stopping at the first divergence.
+     */
+    public void enableLockstep()
+    {
+    	checker = new LockstepChecker(PC);
+    	memUnit.setChecker(checker);
+    }
+    
+    /** enableRenaming - renames destination registers onto physical register files of the given sizes.
+     *    Issue stalls while the destination's file has no free physical register.
+     *  @param gprSize - number of physical general purpose registers, more than 32.
+     *  @param fprSize - number of physical floating point registers, more than 32.
+     */
+    public void enableRenaming(int gprSize, int fprSize)
+    {
+    	if (gprSize <= 32 || fprSize <= 32)
+    	{
+    		System.out.println("Error: physical register files need more than 32 registers");
+    		System.exit(1);
+    	}
+    	if (contexts == null)
+    	{
+    		GPR.getInstance().enableRenaming(gprSize);
+    		FPR.getInstance().enableRenaming(fprSize);
+    		return;
+    	}
+    	for (Core context : contexts)
+    	{
+    		// Physical register names must not collide on the shared CDB
+    		if (context.id > 0)
+    			context.gpr.tagPrefix = context.fpr.tagPrefix = "C" + context.id + ".";
+    		context.gpr.enableRenaming(gprSize);
+    		context.fpr.enableRenaming(fprSize);
+    	}
+    }
+    
+    /** enableLatencyReport - ends the report with histograms of the queueing, execution and write-back
+     *    latencies of the instructions, by opcode and by functional unit.
+     *  @param csvFile - file to export the histograms to as well, or null to only print them.
+     */
+    public void enableLatencyReport(String csvFile)
+    {
+    	latencies = true;
+    	latencyFile = csvFile;
+    }
+    
+    /** setFrameFile - records the snapshot of every cycle to a frame file, which the GUI can replay
+     *    later without simulating again.
+     *  @param fileName - frame file to write.
+     *  @throws IOException
+     */
+    public void setFrameFile(String fileName) throws IOException
+    {
+    	frames = new FrameWriter(fileName);
+    }
+    
+    /** enableCriticalPath - records the producers each instruction waits for at issue and ends the
+     *    report with the critical path through the resulting dependence graph.
+     */
+    public void enableCriticalPath()
+    {
+    	dataflow = true;
+    }
+    
+    /** enableOracle - turns a trace-driven simulator built for MachineConfig.oracle into the limit
+     *    study machine: every reservation station executes on a copy of its unit, every finished
+     *    result is written the cycle after, and issue goes on past branches, whose outcomes the
+     *    trace gives. What is left are the latencies of the units and the dependences of the program.
+     */
+    public void enableOracle()
+    {
+    	if (trace == null)
+    	{
+    		System.out.println("Error: the oracle predicts branches from a trace, which must be set first");
+    		System.exit(1);
+    	}
+    	oracle = true;
+    	FunctionalUnit[] units = {intUnit, fadder, fmult, fdiv, memUnit, branchUnit};
+    	for (FunctionalUnit unit : units)
+    		unit.setUnbounded(true);
+    }
+    
+    /** enableSMT - runs the program on several hardware contexts that share the functional units and
+     *    reservation stations, each with its own PC and register files, all starting at the current PC.
+     *    One instruction issues per cycle, from the first context the fetch policy offers the slot to
+     *    that can issue. Must be called before enableRenaming.
+     *  @param count - number of hardware contexts, 1 to 8.
+     *  @param policy - ROUND_ROBIN or ICOUNT.
+     */
+    public void enableSMT(int count, FetchPolicy policy)
+    {
+    	if (count < 1 || count > 8)
+    	{
+    		System.out.println("Error: SMT needs 1 to 8 hardware contexts");
+    		System.exit(1);
+    	}
+    	contexts = new Core[count];
+    	contextPC = new int[count];
+    	contextHalted = new boolean[count];
+    	contextIssued = new long[count];
+    	fetchOrder = new int[count];
+    	icount = new int[count];
+    	for (int i = 0; i < count; i++)
+    	{
+    		contexts[i] = new Core(i, this);
+    		contextPC[i] = PC;
+    	}
+    	fetchPolicy = policy;
+    	StatusTable.getInstance().contexts = count > 1;
+    }
+    
+    /** setTrace - drives the simulation from a recorded instruction trace instead of fetching from
+     *    memory. Loads and stores take their addresses from the trace, and no results, memory
+     *    contents or branch outcomes are computed; dump instructions are ignored and only the
+     *    status table and timing are reported at the end.
+     *  @param fileName - trace written by TraceWriter.
+     *  @throws IOException
+     */
+    public void setTrace(String fileName) throws IOException
+    {
+    	trace = new TraceReader(fileName);
+    	PC = trace.pc;
+    	intUnit.setComputeValues(false);
+    	fadder.setComputeValues(false);
+    	memUnit.setComputeValues(false);
+    	branchUnit.setComputeValues(false);
+    	fdiv.setComputeValues(false);
+    	fmult.setComputeValues(false);
+    }
+    
+    /** setSelectionPolicy - chooses how every functional unit picks among its ready reservation stations.
+     *  @param policy - OLDEST_FIRST (the default) or INDEX_ORDER.
+     */
+    public void setSelectionPolicy(SelectionPolicy policy)
+    {
+    	intUnit.setSelectionPolicy(policy);
+    	fadder.setSelectionPolicy(policy);
+    	memUnit.setSelectionPolicy(policy);
+    	branchUnit.setSelectionPolicy(policy);
+    	fdiv.setSelectionPolicy(policy);
+    	fmult.setSelectionPolicy(policy);
+    }
+    
+    /** setCheckpoint - requests that the full simulator state be written to a file once the clock
+     *    reaches the given cycle. The simulation then continues normally.
+     *  @param cycle - clock cycle after which the checkpoint is taken.
+     *  @param fileName - file the checkpoint is written to.
+     */
+    public void setCheckpoint(int cycle, String fileName)
+    {
+    	checkpointCycle = cycle;
+    	checkpointFile = fileName;
+    }
+    
+    /** setArchitecturalCheckpoint - requests an architectural checkpoint: once the clock reaches the
+     *    given cycle, issue stops until every instruction in flight has written, and then only memory,
+     *    the register values, the PC and the clock are saved. With no reservation station state in it,
+     *    the checkpoint can be restored on any machine configuration. The simulation then continues
+     *    from the drained pipeline.
+     *  @param cycle - clock cycle at which draining starts.
+     *  @param fileName - file the checkpoint is written to.
+     */
+    public void setArchitecturalCheckpoint(int cycle, String fileName)
+    {
+    	setCheckpoint(cycle, fileName);
+    	architectural = true;
+    }
+    
+    /** writeCheckpoint - writes the requested checkpoint, reporting rather than aborting on failure.
+     */
+    void writeCheckpoint()
+    {
+    	try
+    	{
+    		checkpoint(checkpointFile);
+    		Output.getInstance().println((architectural ? "Architectural checkpoint" : "Checkpoint") + " written to " +
+    			checkpointFile + " at cycle " + Clock.getInstance().get());
+    	}
+    	catch (IOException e)
+    	{
+    		Output.getInstance().println("Error: could not write checkpoint " + checkpointFile + ": " + e.getMessage());
+    	}
+    }
+    
+    /** checkpoint - saves everything needed to resume the simulation: memory, both register files,
+     *    the clock, the status table, the PC and halt flag, and every functional unit along with its
+     *    reservation stations. An architectural checkpoint saves only the register values and no
+     *    functional unit.
+     *  @param fileName - file to write the checkpoint to.
+     *  @throws IOException
+     */
+    public void checkpoint(String fileName) throws IOException
+    {
+    	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+    	try
+    	{
+    		out.writeInt(CHECKPOINT_MAGIC);
+    		out.writeInt(CHECKPOINT_VERSION);
+    		out.writeBoolean(architectural);
+    		out.writeInt(PC);
+    		out.writeBoolean(halt);
+    		out.writeLong(issued);
+    		cpi.save(out);
+    		Clock.getInstance().save(out);
+    		Memory.getInstance().save(out);
+    		if (architectural)
+    		{
+    			// Every instruction has written, so the status table holds only finished ones
+    			GPR.getInstance().saveValues(out);
+    			FPR.getInstance().saveValues(out);
+    			StatusTable.getInstance().save(out);
+    			return;
+    		}
+    		GPR.getInstance().save(out);
+    		FPR.getInstance().save(out);
+    		StatusTable.getInstance().save(out);
+    		branchUnit.save(out);
+    		memUnit.save(out);
+    		fdiv.save(out);
+    		fmult.save(out);
+    		fadder.save(out);
+    		intUnit.save(out);
+    	}
+    	finally
+    	{
+    		out.close();
+    	}
+    }
+    
+    /** restore - replaces the current simulator state with a checkpoint written by checkpoint, so that
+     *    a following call to simulate resumes exactly where the checkpointed run left off. An
+     *    architectural checkpoint resumes with every reservation station empty.
+     *  @param fileName - checkpoint file to read.
+     *  @throws IOException if the file is not a checkpoint, or is a full checkpoint taken on a machine
+     *    with different reservation station counts.
+     */
+    public void restore(String fileName) throws IOException
+    {
+    	DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+    	try
+    	{
+    		if (in.readInt() != CHECKPOINT_MAGIC)
+    			throw new IOException(fileName + " is not a simulator checkpoint");
+    		if (in.readInt() != CHECKPOINT_VERSION)
+    			throw new IOException(fileName + " was written by an incompatible simulator version");
+    		boolean drained = in.readBoolean();
+    		PC = in.readInt();
+    		halt = in.readBoolean();
+    		issued = in.readLong();
+    		cpi.restore(in);
+    		Clock.getInstance().restore(in);
+    		Memory.getInstance().restore(in);
+    		if (drained)
+    		{
+    			GPR.getInstance().restoreValues(in);
+    			FPR.getInstance().restoreValues(in);
+    			StatusTable.getInstance().restore(in);
+    			return;
+    		}
+    		GPR.getInstance().restore(in);
+    		FPR.getInstance().restore(in);
+    		StatusTable.getInstance().restore(in);
+    		branchUnit.restore(in);
+    		memUnit.restore(in);
+    		fdiv.restore(in);
+    		fmult.restore(in);
+    		fadder.restore(in);
+    		intUnit.restore(in);
+    	}
+    	catch (EOFException e)
+    	{
+    		throw new IOException(fileName + " is truncated");
+    	}
+    	finally
+    	{
+    		in.close();
+    	}
+    }
     
     /** finished - make sure all functional units have finished executing.
      * @return true if all FUs clear, false otherwise.
      */
     public boolean finished()
     {
+    	// Unbounded units overlap so much that the last instructions can be a multiply or divide
+    	if (oracle)
+    		return memUnit.finished() && fadder.finished() && intUnit.finished() && fmult.finished() &&
+    			fdiv.finished() && branchUnit.finished();
     	return (memUnit.finished() && fadder.finished() && intUnit.finished());
     }
     
+    /** hardwareCost - size of the machine in the units a design-space search budgets: one for every
+     *    functional unit, reservation station, CDB and issue slot.
+     *  @return the cost.
+     */
+    int hardwareCost()
+    {
+    	FunctionalUnit[] units = {intUnit, fadder, fmult, fdiv, memUnit, branchUnit};
+    	int cost = units.length + cdbs.length + issueWidth;
+    	for (FunctionalUnit unit : units)
+    		cost += unit.getStationCount();
+    	return cost;
+    }
+    
     /** updateReservationStations - according to the CDB, update any reservations stations that were
      *    waiting on that result, and update the registers if no reservation stations needed the value.
      *  @param cdb - Common Data Bus
@@ -100,14 +760,25 @@ public class Simulator
     {
     	if (cdb != null)
     	{
+    		if (checker != null)
+    			checker.broadcast(cdb);
     		branchUnit.updateReservationStations(cdb);
     		memUnit.updateReservationStations(cdb);
     		fdiv.updateReservationStations(cdb);
     		fmult.updateReservationStations(cdb);
     		fadder.updateReservationStations(cdb);
     		intUnit.updateReservationStations(cdb);
-    		GPR.getInstance().updateRegisterFile(cdb);
-    		FPR.getInstance().updateRegisterFile(cdb);
+    		if (contexts == null)
+    		{
+    			GPR.getInstance().updateRegisterFile(cdb);
+    			FPR.getInstance().updateRegisterFile(cdb);
+    		}
+    		else
+    			for (Core context : contexts)
+    			{
+    				context.gpr.updateRegisterFile(cdb);
+    				context.fpr.updateRegisterFile(cdb);
+    			}
     	}
     }
     
@@ -124,30 +795,44 @@ public class Simulator
     	intUnit.clear();
     }
     
-    /** write - A functional unit's results are written to the CDB according to priority specifications.
-     *    Only one result from one functional unit can be written to the CDB per cycle.
-     *  @return - Common Data Bus
+    /** write - Functional units' results are written to the CDBs according to priority specifications.
+     *    Each functional unit writes at most one result per cycle, and each CDB carries one result.
+     *  @return - number of results written, held in cdbs.
      */
-    public CDB write()
+    public int write()
     {
     	// Order: Memory Unit, Floating Point Divide, Floating Point Multiply, Floating Point Adder, Integer Unit
     	branchUnit.write();
-    	CDB cdb = memUnit.write();
-    	if (cdb != null)
-    		return cdb;
-    	cdb = this.fdiv.write();
-    	if (cdb != null) 
-    		return cdb;
-    	cdb = this.fmult.write();
-    	if (cdb != null) 
-    		return cdb;
-    	cdb = fadder.write();
-    	if (cdb != null) 
-    		return cdb;
-    	cdb = intUnit.write();
-    	if (cdb != null)
-    		return cdb;
-    	return null;
+    	FunctionalUnit[] order = {memUnit, fdiv, fmult, fadder, intUnit};
+    	int[] units = {CPIStack.LOAD, CPIStack.FPDIV, CPIStack.FPMULT, CPIStack.FPADD, CPIStack.INTEGER};
+    	int written = 0;
+    	cdbLosers = 0;
+    	if (oracle)
+    	{
+    		// As many CDBs as stations, so every finished result is written
+    		while (branchUnit.hasResultToWrite())
+    			branchUnit.write();
+    		for (FunctionalUnit unit : order)
+    			for (CDB cdb = unit.write(); cdb != null; cdb = unit.write())
+    				cdbs[written++] = cdb;
+    		return written;
+    	}
+    	for (int i = 0; i < order.length; i++)
+    	{
+    		if (written < cdbs.length)
+    		{
+    			CDB cdb = order[i].write();
+    			if (cdb != null)
+    				cdbs[written++] = cdb;
+    		}
+    		else if (order[i].hasResultToWrite())
+    		{
+    			// Lower priority units keep their results for a later cycle
+    			cpi.cdbLost(units[i]);
+    			cdbLosers |= 1 << units[i];
+    		}
+    	}
+    	return written;
     }
     
     /** execute - calls the execute stage of the various functional units. If a branch instruction is determined in this
@@ -171,6 +856,9 @@ public class Simulator
      */
     void dump(int dump)
     {
+    	// Nothing holds a value in a trace-driven run
+    	if (trace != null)
+    		return;
     	int mask = 1;
     	if ((dump & mask) == 1)
     		Memory.getInstance().dump();
@@ -216,6 +904,10 @@ public class Simulator
     	int rd = Tools.grabBits(operation, 16, 20);
     	int func = Tools.grabBits(operation, 26, 31);
     	int offset = Tools.grabBits(operation, 6, 31);
+    	Registers dest = destinationFile(opcode, func);
+    	renameStall = (dest != null && !dest.hasFreeRegister());
+    	if (renameStall)
+    		return true;
     	switch (opcode)
     	{
         case 1:
@@ -264,12 +956,45 @@ public class Simulator
     	return false;
     }
     
+    /** destinationFile - the register file an instruction writes its result to.
+     *  @param opcode - opcode field of the instruction.
+     *  @param func - function field of the instruction.
+     *  @return GPR or FPR, or null for instructions without a destination register.
+     */
+    Registers destinationFile(int opcode, int func)
+    {
+    	switch (opcode)
+    	{
+    	case 24: case 25: case 55:
+    		return GPR.getInstance();
+    	case 53:
+    		return FPR.getInstance();
+    	case 1: case 2: case 4: case 5: case 44: case 61: case 63:
+    		return null;
+    	}
+    	if (func == 44 || func == 46)
+    		return GPR.getInstance();
+    	if (func >= 47 && func <= 50)
+    		return FPR.getInstance();
+    	return null;
+    }
+    
+    /** current - the simulator whose PC getPC and setPC act on: that of the core being stepped in a
+     *    multicore run, otherwise the one most recently created.
+     *  @return the current simulator.
+     */
+    static Simulator current()
+    {
+    	Core core = Core.current();
+    	return (core != null) ? core.simulator : active;
+    }
+    
     /** getPC - getter for PC, returns present PC value
      * @return - Program counter
      */
     public static int getPC()
     {
-    	return PC;
+    	return current().PC;
     }
     
     /** setPC - static setter for PC, allows BranchUnit to update PC upon taken branch.
@@ -277,18 +1002,43 @@ public class Simulator
      */
     public static void setPC(int address)
     {
-    	PC = address;
+    	current().PC = address;
+    }
+    
+    /** getPC - PC of a hardware context, the only one unless SMT is enabled.
+     *  @param context - number of the context.
+     *  @return - Program counter of the context.
+     */
+    public static int getPC(int context)
+    {
+    	Simulator simulator = current();
+    	return (simulator.contexts == null) ? simulator.PC : simulator.contextPC[context];
+    }
+    
+    /** setPC - sets the PC of a hardware context when its branch is taken.
+     *  @param context - number of the context.
+     *  @param address - address to set the PC to.
+     */
+    public static void setPC(int context, int address)
+    {
+    	Simulator simulator = current();
+    	if (simulator.contexts == null)
+    		simulator.PC = address;
+    	else
+    		simulator.contextPC[context] = address;
     }
 
     //This method is for the GUI, do not modify this
     public void addSnapShot(int instr, int PCValue, 
                             long cdbValue, String cdbSrc)
     {
-         if (snapshots == null) snapshots = new ArrayList<CycleSnapShot>();
-          
-          snapshots.add(new CycleSnapShot(Clock.getInstance().get(), instr,
+          CycleSnapShot snapshot = new CycleSnapShot(Clock.getInstance().get(), instr,
                         PCValue, buildFunctionalUnitImageList(), cdbValue,
-                        cdbSrc));
+                        cdbSrc);
+          if (snapshots != null)
+        	  snapshots.publish(snapshot);
+          if (frames != null)
+        	  frames.write(snapshot);
      }
 
      //You'll need to modify this method to use the GUI
@@ -296,21 +1046,12 @@ public class Simulator
      {
           ArrayList<FUnitImage> list = new ArrayList<FUnitImage>();
 
-          //you'll need to create a new FUnitImage object for each
-          //of your Functional Units and pass that object to list.add
-          //Each Functional Unit will have an array of Stations,
-          //a count of the Stations, an executionCount, the currentInstruction,
-          //a flag indicating whether it is busy or not, and the
-          //number of remaining execution Cycles
-          //
-          //Here is a sample call, although it won't work until there
-          //is an intUnit object.
-/*
-          list.add(new FUnitImage("integer", intUnit.RS, intUnit.RScount,
-                   intUnit.executionCount, intUnit.currentInstruction,
-                   intUnit.FUbusy, intUnit.executionCycles));
-
-*/
+          FunctionalUnit[] units = {intUnit, fadder, fmult, fdiv, memUnit, branchUnit};
+          String[] names = {"Integer", "FPAdder", "FPMult", "FPDiv", "Memory", "Branch"};
+          for (int i = 0; i < units.length; i++)
+        	  list.add(new FUnitImage(names[i], units[i].getStations(), units[i].getStationCount(),
+        		  units[i].getLatency(), units[i].getCurrentInstruction(), units[i].isBusy(),
+        		  units[i].getExecutionCycles()));
           return list;
      }
 }
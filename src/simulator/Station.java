@@ -1,4 +1,7 @@
 package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 public class Station
 {
@@ -7,12 +10,16 @@ public class Station
     public String operation;  //type of operation
     public long Vj;           //value of operand
     public long Vk;           //value of operand
-    public String Qj;         //name of reservation station producing Vj
-    public String Qk;         //name of reservation station producing Vk
+    public int Qj;            //tag of the station or physical register producing Vj, Tags.NONE if none
+    public int Qk;            //tag of the station or physical register producing Vk, Tags.NONE if none
     public long A;            //used to hold immediate field or eff address
     public long result;       //used to hold result 
     public boolean resultReady;   //flag indicating result is ready to be written
     public boolean resultWritten;  //flag indicating the result has been written
+    public int tag;           //tag the result is broadcast under: this station or its physical register
+    public int context;       //hardware context that issued the instruction, 0 unless SMT
+    public int id = Tags.NONE;    //tag of this station
+    Tags tags;                //names of the tags, for dumps and checkpoints
 
     public Station(String name)
     {
@@ -20,9 +27,11 @@ public class Station
         busy = false;
         operation = null;
         Vj = Vk = A = 0;
-        Qj = Qk = null;
+        Qj = Qk = Tags.NONE;
         resultReady = false;
         resultWritten = false;
+        tag = Tags.NONE;
+        context = 0;
     }
  
     //after result is written, clear the reservation station
@@ -31,56 +40,103 @@ public class Station
         busy = false;
         operation = null;
         Vj = Vk = A = 0;
-        Qj = Qk = null;
+        Qj = Qk = Tags.NONE;
         resultReady = false;
         resultWritten = false;
+        tag = Tags.NONE;
+        context = 0;
+    }
+
+    //gives the station its tag among the tags of the simulator
+    public void number(Tags tags)
+    {
+        this.tags = tags;
+        id = tags.add(name);
     }
 
     //determines whether the operands are available and therefore ready
     //for execution
     public boolean ready()
     {
-        return (busy == true && Qj == null && Qk == null && resultReady == false);
+        return (busy == true && Qj == Tags.NONE && Qk == Tags.NONE && resultReady == false);
+    }
+
+    //name of the producer of Vj, null if none
+    public String getQj()
+    {
+        return tags.name(Qj);
+    }
+
+    //name of the producer of Vk, null if none
+    public String getQk()
+    {
+        return tags.name(Qk);
+    }
+
+    //writes the contents of the Station to a checkpoint
+    public void save(DataOutputStream out) throws IOException
+    {
+        out.writeBoolean(busy);
+        Tools.writeString(out, operation);
+        out.writeLong(Vj);
+        out.writeLong(Vk);
+        tags.write(out, Qj);
+        tags.write(out, Qk);
+        out.writeLong(A);
+        out.writeLong(result);
+        out.writeBoolean(resultReady);
+        out.writeBoolean(resultWritten);
+        tags.write(out, tag);
+    }
+
+    //restores the contents written by save; the name is not saved
+    public void restore(DataInputStream in) throws IOException
+    {
+        busy = in.readBoolean();
+        operation = Tools.readString(in);
+        Vj = in.readLong();
+        Vk = in.readLong();
+        Qj = tags.read(in);
+        Qk = tags.read(in);
+        A = in.readLong();
+        result = in.readLong();
+        resultReady = in.readBoolean();
+        resultWritten = in.readBoolean();
+        tag = tags.read(in);
     }
 
     //outputs the contents of the Station
     public void dump()
     {
-        System.out.print(Tools.pad(name, 8, " ", Direction.RIGHT));
-        System.out.print(Tools.pad(Boolean.toString(busy), 8, " ", Direction.RIGHT));
-        if (operation == null)
-            System.out.print(Tools.pad("null", 8, " ", Direction.RIGHT));
-        else
-            System.out.print(Tools.pad(operation, 8, " ", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.print(Tools.pad(Long.toHexString(Vj), 16, "0", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.print(Tools.pad(Long.toHexString(Vk), 16, "0", Direction.RIGHT));
-        if (Qj == null)
-            System.out.print(Tools.pad("null", 8, " ", Direction.RIGHT));
-        else
-            System.out.print(Tools.pad(Qj, 8, " ", Direction.RIGHT));
-        if (Qk == null)
-            System.out.print(Tools.pad("null", 8, " ", Direction.RIGHT));
-        else
-            System.out.print(Tools.pad(Qk, 8, " ", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.println(Tools.pad(Long.toHexString(A), 16, "0", Direction.RIGHT));
+        Output out = Output.getInstance();
+        out.pad(name, 8, ' ', Direction.RIGHT);
+        out.pad(busy ? "true" : "false", 8, ' ', Direction.RIGHT);
+        out.pad((operation == null) ? "null" : operation, 8, ' ', Direction.RIGHT);
+        out.print(' ');
+        out.hex(Vj, 16);
+        out.print(' ');
+        out.hex(Vk, 16);
+        out.pad((Qj == Tags.NONE) ? "null" : getQj(), 8, ' ', Direction.RIGHT);
+        out.pad((Qk == Tags.NONE) ? "null" : getQk(), 8, ' ', Direction.RIGHT);
+        out.print(' ');
+        out.hex(A, 16);
+        out.println();
     }
 
     public static void dumpHeader()
     {        
-        System.out.print(Tools.pad("Name", 8, " ", Direction.RIGHT));
-        System.out.print(Tools.pad("Busy", 8, " ", Direction.RIGHT));
-        System.out.print(Tools.pad("Op", 8, " ", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.print(Tools.pad("Vj", 16, " ", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.print(Tools.pad("Vk", 16, " ", Direction.RIGHT));
-        System.out.print(Tools.pad("Qj", 8, " ", Direction.RIGHT));
-        System.out.print(Tools.pad("Qk", 8, " ", Direction.RIGHT));
-        System.out.print(" ");
-        System.out.println(Tools.pad("A", 16, " ", Direction.RIGHT));
+        Output out = Output.getInstance();
+        out.pad("Name", 8, ' ', Direction.RIGHT);
+        out.pad("Busy", 8, ' ', Direction.RIGHT);
+        out.pad("Op", 8, ' ', Direction.RIGHT);
+        out.print(' ');
+        out.pad("Vj", 16, ' ', Direction.RIGHT);
+        out.print(' ');
+        out.pad("Vk", 16, ' ', Direction.RIGHT);
+        out.pad("Qj", 8, ' ', Direction.RIGHT);
+        out.pad("Qk", 8, ' ', Direction.RIGHT);
+        out.print(' ');
+        out.pad("A", 16, ' ', Direction.RIGHT);
+        out.println();
     }
 }
-
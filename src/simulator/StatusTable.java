@@ -1,4 +1,7 @@
 package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 //This class is used to keep statistics about instructions.
@@ -13,21 +16,30 @@ public class StatusTable
         int endEX;
         int write;
         String station;
+        int context;    //hardware context that issued it
+        int pc;         //address it was fetched from, recorded for dataflow analysis
+        int[] producers;    //entries it waited on at issue, null until recorded for dataflow analysis
     }
 
     Vector <StatusTable.Entry> v;
+    boolean contexts;   //label each instruction with its hardware context, set under SMT
+    HashMap<String, Integer> producerOf = new HashMap<String, Integer>();   //result tag -> entry producing it
+    HashMap<Integer, Integer> lastBranch = new HashMap<Integer, Integer>();  //context -> entry of its latest branch
     static StatusTable statPtr = null;
 
     //StatusTable class is a singleton
     public static StatusTable getInstance()
     {
+        Core core = Core.current();
+        if (core != null)
+            return core.status;
         if (statPtr == null)
             statPtr = new StatusTable();
         return statPtr;
     }
 
-    //private constructor since StatusTable is a singleton
-    private StatusTable()
+    //package private constructor since StatusTable is a singleton, apart from one per Core
+    StatusTable()
     {
         v = new Vector<StatusTable.Entry>(2000);
     }
@@ -43,9 +55,50 @@ public class StatusTable
         entry.startEX = -1;
         entry.endEX = -1;
         entry.write = -1;
+        Core core = Core.current();
+        entry.context = (core == null) ? 0 : core.id;
         v.addElement(entry);
     }
 
+    //record the address of the most recently issued instruction, the entries producing the operands
+    //it waits for, named by their tags, and the latest branch of its context, since nothing is fetched
+    //past a branch until it resolves; then make it the producer of its own result tag
+    void recordDependences(int pc, String qj, String qk, String tag)
+    {
+        Entry entry = v.lastElement();
+        entry.pc = pc;
+        int count = 0;
+        int[] producers = new int[3];
+        for (String q : new String[] {qj, qk})
+            if (q != null && producerOf.containsKey(q))
+                producers[count++] = producerOf.get(q);
+        if (lastBranch.containsKey(entry.context))
+            producers[count++] = lastBranch.get(entry.context);
+        entry.producers = Arrays.copyOf(producers, count);
+        if (tag != null)
+            producerOf.put(tag, v.size() - 1);
+        if (entry.station.startsWith("Branch"))
+            lastBranch.put(entry.context, v.size() - 1);
+    }
+
+    //number of instructions issued so far
+    int size()
+    {
+        return v.size();
+    }
+
+    //station of the most recently issued instruction
+    String lastStation()
+    {
+        return v.lastElement().station;
+    }
+
+    //text of the most recently issued instruction
+    String lastInstruction()
+    {
+        return v.lastElement().instruction;
+    }
+
     //When an instruction in the station indicated begins execution,
     //this function must be called.
     public void updateStartEX(String station)
@@ -58,7 +111,7 @@ public class StatusTable
                 v.elementAt(i).startEX = Clock.getInstance().get();
                 return;
             }
-        System.out.println("ERROR: couldn't find startEX for station "
+        Output.getInstance().println("ERROR: couldn't find startEX for station "
                            + station);
     }
 
@@ -74,7 +127,7 @@ public class StatusTable
                 v.elementAt(i).endEX = Clock.getInstance().get();
                 return;
             }
-        System.out.println("ERROR: couldn't find endEX for station "
+        Output.getInstance().println("ERROR: couldn't find endEX for station "
                            + station);
     }
 
@@ -93,37 +146,102 @@ public class StatusTable
                 return;
             }
         }
-        System.out.println("ERROR: couldn't find write for station "
+        Output.getInstance().println("ERROR: couldn't find write for station "
                            + station);
     }
 
+    //write every entry to a checkpoint, with the dataflow recorded for the critical path
+    void save(DataOutputStream out) throws IOException
+    {
+        out.writeInt(v.size());
+        for (Entry entry : v)
+        {
+            out.writeUTF(entry.instruction);
+            out.writeUTF(entry.station);
+            out.writeInt(entry.issue);
+            out.writeInt(entry.startEX);
+            out.writeInt(entry.endEX);
+            out.writeInt(entry.write);
+            out.writeInt(entry.context);
+            out.writeInt(entry.pc);
+            out.writeInt((entry.producers == null) ? -1 : entry.producers.length);
+            if (entry.producers != null)
+                for (int producer : entry.producers)
+                    out.writeInt(producer);
+        }
+        out.writeInt(producerOf.size());
+        for (Map.Entry<String, Integer> producer : producerOf.entrySet())
+        {
+            out.writeUTF(producer.getKey());
+            out.writeInt(producer.getValue());
+        }
+        out.writeInt(lastBranch.size());
+        for (Map.Entry<Integer, Integer> branch : lastBranch.entrySet())
+        {
+            out.writeInt(branch.getKey());
+            out.writeInt(branch.getValue());
+        }
+    }
+
+    //replace the table with the entries written by save
+    void restore(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        v.clear();
+        for (int i = 0; i < count; i++)
+        {
+            Entry entry = new Entry();
+            entry.instruction = in.readUTF();
+            entry.station = in.readUTF();
+            entry.issue = in.readInt();
+            entry.startEX = in.readInt();
+            entry.endEX = in.readInt();
+            entry.write = in.readInt();
+            entry.context = in.readInt();
+            entry.pc = in.readInt();
+            int producers = in.readInt();
+            if (producers >= 0)
+            {
+                entry.producers = new int[producers];
+                for (int j = 0; j < producers; j++)
+                    entry.producers[j] = in.readInt();
+            }
+            v.addElement(entry);
+        }
+        producerOf.clear();
+        for (int i = in.readInt(); i > 0; i--)
+            producerOf.put(in.readUTF(), in.readInt());
+        lastBranch.clear();
+        for (int i = in.readInt(); i > 0; i--)
+            lastBranch.put(in.readInt(), in.readInt());
+    }
+
     //output the statistics about each instruction
     void dump()
     {
         int i;
-        System.out.println(Tools.pad("Instruction", 20, " ", Direction.LEFT) +
-                           Tools.pad("Issue",  7, " ", Direction.RIGHT) +
-                           Tools.pad("Start",  7, " ", Direction.RIGHT) +
-                           Tools.pad("End",    7, " ", Direction.RIGHT) +
-                           Tools.pad("Write",  7, " ", Direction.RIGHT));
+        Output out = Output.getInstance();
+        out.pad("Instruction", 20, ' ', Direction.LEFT);
+        out.pad("Issue",  7, ' ', Direction.RIGHT);
+        out.pad("Start",  7, ' ', Direction.RIGHT);
+        out.pad("End",    7, ' ', Direction.RIGHT);
+        out.pad("Write",  7, ' ', Direction.RIGHT);
+        out.println();
         for (i = 0; i < v.size(); i++)
         {
-            System.out.print(Tools.pad(v.elementAt(i).instruction, 20, " ",
-                                       Direction.LEFT) +
-                             Tools.pad(Integer.toString(v.elementAt(i).issue), 
-                                       7, " ", Direction.RIGHT));
+            if (contexts)
+                out.pad(v.elementAt(i).context + ": " + v.elementAt(i).instruction, 20, ' ', Direction.LEFT);
+            else
+                out.pad(v.elementAt(i).instruction, 20, ' ', Direction.LEFT);
+            out.decimal(v.elementAt(i).issue, 7, ' ', Direction.RIGHT);
 
             if (v.elementAt(i).startEX != -1)
-                System.out.print(Tools.pad(Integer.toString(v.elementAt(i).startEX), 
-                                           7, " ", Direction.RIGHT));
+                out.decimal(v.elementAt(i).startEX, 7, ' ', Direction.RIGHT);
             if (v.elementAt(i).endEX != -1)
-                System.out.print(Tools.pad(Integer.toString(v.elementAt(i).endEX), 
-                                           7, " ", Direction.RIGHT));
+                out.decimal(v.elementAt(i).endEX, 7, ' ', Direction.RIGHT);
             if (v.elementAt(i).write != -1)
-                System.out.println(Tools.pad(Integer.toString(v.elementAt(i).write), 
-                                             7, " ", Direction.RIGHT));
-            else 
-                System.out.println();
+                out.decimal(v.elementAt(i).write, 7, ' ', Direction.RIGHT);
+            out.println();
         }
     }
 }
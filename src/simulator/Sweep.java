@@ -0,0 +1,120 @@
+package simulator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sweep simulates every program of a set on every machine configuration of a grid and writes the
+ * results as a CSV table. The grid is the cross product of the values listed for each parameter in
+ * a specification file, for example
+ *
+ *     program src/Tests/vectorDiv.hex
+ *     memoryLatency 6 11
+ *     loadStations 2 4 8
+ *     cdbWidth 1 2
+ *
+ * Parameters not listed keep their MachineConfig defaults. The points are simulated in parallel
+ * on a work-stealing pool, each on an isolated Core. Results are cached in a file keyed by the hash
+ * of the program and the hash of the configuration, so running a sweep again only simulates the
+ * points that are not in the cache.
+ */
+public class Sweep
+{
+	List<String> programs = new ArrayList<String>();
+	List<MachineConfig> configs = new ArrayList<MachineConfig>();
+
+	/** Sweep constructor - reads the programs and parameter values of a sweep.
+	 *  @param specFile - specification file: "program <file>" lines and "<parameter> <values>" lines.
+	 *  @param program - first program of the set.
+	 *  @throws IOException
+	 */
+	public Sweep(String specFile, String program) throws IOException
+	{
+		addProgram(program);
+		configs.add(new MachineConfig());
+		BufferedReader reader = new BufferedReader(new FileReader(specFile));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] words = line.split("\\s+");
+				if (words[0].equals("program"))
+				{
+					for (int i = 1; i < words.length; i++)
+						addProgram(words[i]);
+					continue;
+				}
+				if (words.length < 2)
+					throw new IllegalArgumentException("no values given for " + words[0]);
+				// Every configuration so far is combined with each value
+				List<MachineConfig> grid = new ArrayList<MachineConfig>();
+				for (MachineConfig config : configs)
+					for (int i = 1; i < words.length; i++)
+					{
+						MachineConfig point = new MachineConfig(config);
+						point.set(words[0], MachineConfig.number(words[0], words[i]));
+						grid.add(point);
+					}
+				configs = grid;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private void addProgram(String program)
+	{
+		if (!programs.contains(program))
+			programs.add(program);
+	}
+
+	/** run - simulates the points missing from the cache, adds them to it, and writes every point.
+	 *  @param csvFile - results table, with the program, every parameter, instructions, cycles and IPC.
+	 *  @param cacheFile - cache of earlier results, created if it does not exist.
+	 *  @throws IOException
+	 */
+	public void run(String csvFile, String cacheFile) throws IOException
+	{
+		ResultCache cache = new ResultCache(cacheFile);
+		cache.evaluate(programs, configs);
+		writeTable(csvFile, cache);
+		Output.getInstance().println("Sweep: " + (programs.size() * configs.size()) + " points, " + cache.cached +
+			" from the cache, " + cache.simulated + " simulated; results in " + csvFile);
+		Output.getInstance().flush();
+	}
+
+	private void writeTable(String csvFile, ResultCache cache) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(csvFile));
+		try
+		{
+			out.write("program," + String.join(",", MachineConfig.NAMES) + ",instructions,cycles,ipc");
+			out.newLine();
+			for (int p = 0; p < programs.size(); p++)
+				for (int c = 0; c < configs.size(); c++)
+				{
+					long[] result = cache.get(programs.get(p), configs.get(c));
+					out.write(programs.get(p));
+					for (int value : configs.get(c).values)
+						out.write("," + value);
+					out.write("," + result[0] + "," + result[1] + "," +
+						String.format("%.4f", (double)result[0] / result[1]));
+					out.newLine();
+				}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
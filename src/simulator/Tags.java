@@ -0,0 +1,78 @@
+package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Tags numbers the names a result can be broadcast under: every reservation station, and every
+ * physical register once renaming is enabled. Stations, the CDB and the register files hold these
+ * numbers, so a broadcast finds what is waiting for it by indexing an array. Names are only looked
+ * up to print them and to read and write checkpoints. A Simulator shares its Tags with the register
+ * files of its core or of its SMT contexts.
+ */
+public class Tags
+{
+	public static final int NONE = -1;	// no producer, the value is available
+	String[] names = new String[64];
+	int count;
+	HashMap<String, Integer> numbers = new HashMap<String, Integer>();	// name -> latest number
+
+	/** add - gives a name the next number. A name added again gets a new number, which find returns
+	 *    from then on.
+	 *  @param name - name of the station or physical register.
+	 *  @return the number.
+	 */
+	public int add(String name)
+	{
+		if (count == names.length)
+			names = Arrays.copyOf(names, 2 * count);
+		names[count] = name;
+		numbers.put(name, count);
+		return count++;
+	}
+
+	/** name - the name a tag was added with.
+	 *  @param tag - number of the tag, or NONE.
+	 *  @return the name, null for NONE.
+	 */
+	public String name(int tag)
+	{
+		return (tag == NONE) ? null : names[tag];
+	}
+
+	/** size - number of tags added so far, one more than the highest tag.
+	 *  @return count.
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/** write - writes a tag to a checkpoint by name, since numbers differ between machines.
+	 *  @param out - checkpoint stream
+	 *  @param tag - tag to write, or NONE.
+	 *  @throws IOException
+	 */
+	public void write(DataOutputStream out, int tag) throws IOException
+	{
+		Tools.writeString(out, name(tag));
+	}
+
+	/** read - reads a tag written by write.
+	 *  @param in - checkpoint stream
+	 *  @return the latest number of the name, or NONE.
+	 *  @throws IOException if the name is not a tag of this simulator.
+	 */
+	public int read(DataInputStream in) throws IOException
+	{
+		String name = Tools.readString(in);
+		if (name == null)
+			return NONE;
+		Integer tag = numbers.get(name);
+		if (tag == null)
+			throw new IOException("checkpoint waits on " + name + ", which this machine does not have");
+		return tag;
+	}
+}
@@ -1,4 +1,9 @@
 package simulator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class Tools
 {
@@ -43,13 +48,44 @@ public class Tools
     public static String pad(String field, int len, String padChar,
                              Direction dir)
     {
-        int i;
-        String padding = padChar;
         int count = len - field.length();
-        for (i = 0; i < count - 1; i++) padding = padding + padChar;
-        if (count != 0 && dir == Direction.LEFT) field = field + padding;
-        if (count != 0 && dir == Direction.RIGHT) field = padding + field;
-        return field;
+        if (count == 0) return field;
+        StringBuilder padded = new StringBuilder(Math.max(len, field.length() + 1));
+        if (dir == Direction.LEFT) padded.append(field);
+        for (int i = Math.max(count, 1); i > 0; i--) padded.append(padChar);
+        if (dir == Direction.RIGHT) padded.append(field);
+        return padded.toString();
+    }
+
+    //writes a possibly null String to a checkpoint stream
+    public static void writeString(DataOutputStream out, String value)
+        throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    //reads a String written by writeString, null if none was written
+    public static String readString(DataInputStream in) throws IOException
+    {
+        if (in.readBoolean()) return in.readUTF();
+        return null;
     }
-}
 
+    //returns the first 16 hex digits of the SHA-256 digest of data
+    public static String hash(byte[] data)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 8; i++)
+                text.append(String.format("%02x", digest[i]));
+            return text.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
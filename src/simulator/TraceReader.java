@@ -0,0 +1,68 @@
+package simulator;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * TraceReader streams a trace written by TraceWriter one record at a time. The fields of the current
+ * record are read directly. A trace that ends before its halt instruction is treated as halting.
+ */
+public class TraceReader
+{
+	static final int HALT = 0x04000000;
+
+	DataInputStream in;
+	String fileName;
+	// current record
+	int pc;
+	int instruction;
+	long address;
+	boolean taken;
+	long records;	// records read so far
+
+	/** TraceReader constructor - opens the trace, checks its header and reads the first record.
+	 *  @param fileName - trace file written by TraceWriter.
+	 *  @throws IOException
+	 */
+	public TraceReader(String fileName) throws IOException
+	{
+		this.fileName = fileName;
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		if (in.readInt() != TraceWriter.TRACE_MAGIC)
+			throw new IOException(fileName + " is not a trace");
+		if (in.readInt() != TraceWriter.TRACE_VERSION)
+			throw new IOException(fileName + " was written by an incompatible simulator version");
+		next();
+	}
+
+	/** next - advances to the following record.
+	 */
+	void next()
+	{
+		try
+		{
+			pc = in.readInt();
+			instruction = in.readInt();
+			int flags = in.readByte();
+			taken = (flags & TraceWriter.TAKEN) != 0;
+			address = ((flags & TraceWriter.ADDRESS) != 0) ? in.readLong() : 0;
+			records++;
+		}
+		catch (EOFException e)
+		{
+			// past the end, keep issuing halt from the last PC
+			pc += 4;
+			instruction = HALT;
+			address = 0;
+			taken = false;
+		}
+		catch (IOException e)
+		{
+			Output.getInstance().flush();
+			System.out.println("Error: could not read trace " + fileName + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
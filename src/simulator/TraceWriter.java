@@ -0,0 +1,78 @@
+package simulator;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * TraceWriter records the dynamic instruction stream of a run for trace-driven timing simulation.
+ * Each record holds the PC and the instruction word, the effective address of a load or store and
+ * the outcome of a branch. The trace starts with a header and ends with the halt instruction.
+ */
+public class TraceWriter
+{
+	static final int TRACE_MAGIC = 0x54535452; // "TSTR"
+	static final int TRACE_VERSION = 1;
+	// record flags
+	static final int TAKEN = 1;
+	static final int ADDRESS = 2;
+
+	DataOutputStream out;
+	String fileName;
+
+	/** TraceWriter constructor - creates the trace file and writes its header.
+	 *  @param fileName - file to write, replaced if it exists.
+	 *  @throws IOException
+	 */
+	public TraceWriter(String fileName) throws IOException
+	{
+		this.fileName = fileName;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		out.writeInt(TRACE_MAGIC);
+		out.writeInt(TRACE_VERSION);
+	}
+
+	/** record - appends one executed instruction.
+	 *  @param pc - address the instruction was fetched from.
+	 *  @param instruction - instruction word.
+	 *  @param memory - true for loads and stores.
+	 *  @param address - effective address of a load or store.
+	 *  @param taken - true for a taken branch or a jump.
+	 */
+	void record(int pc, int instruction, boolean memory, long address, boolean taken)
+	{
+		try
+		{
+			out.writeInt(pc);
+			out.writeInt(instruction);
+			out.writeByte((taken ? TAKEN : 0) | (memory ? ADDRESS : 0));
+			if (memory)
+				out.writeLong(address);
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	/** close - flushes and closes the trace file.
+	 */
+	void close()
+	{
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	private void fail(IOException e)
+	{
+		Output.getInstance().flush();
+		System.out.println("Error: could not write trace " + fileName + ": " + e.getMessage());
+		System.exit(1);
+	}
+}
@@ -103,6 +103,16 @@ public class Canvas extends JPanel{
 		startButton.addActionListener((ActionListener)mainWindow);
 		controls.add(startButton, c);
 		
+		c.gridx = 0;
+		c.gridy++;
+		button = new JButton("Prev PC");
+		button.addActionListener((ActionListener)mainWindow);
+		controls.add(button, c);
+		c.gridx++;
+		button = new JButton("Next PC");
+		button.addActionListener((ActionListener)mainWindow);
+		controls.add(button, c);
+		
 		complete.add(registers, BorderLayout.NORTH);
 		complete.add(controls, BorderLayout.CENTER);
 		return complete;
@@ -273,33 +283,64 @@ public class Canvas extends JPanel{
 //	}
 	
 	public void setRSinFUnit(FunctionalUnit funit, FUnitImage unitImage)
+	{
+		setRSinFUnit(funit, unitImage, null);
+	}
+	
+	/***
+	 * Sets the reservation station rows of a unit that differ from the frame shown before.
+	 * @param funit unit to update
+	 * @param unitImage the unit in the new frame
+	 * @param shown the unit in the frame on screen, null to set every row
+	 */
+	public void setRSinFUnit(FunctionalUnit funit, FUnitImage unitImage, FUnitImage shown)
 	{
 		for (int i = 0; i < unitImage.RS.length; i++)
-			funit.setRSEntry(i, unitImage.RS[i]);
+			if (shown == null || i >= shown.RS.length || !unitImage.RS[i].sameAs(shown.RS[i]))
+				funit.setRSEntry(i, unitImage.RS[i]);
 	}
 	
 	public void updateFUnits(CycleSnapShot css)
+	{
+		updateFUnits(css, null);
+	}
+	
+	/***
+	 * Updates the functional units to a new frame, touching only the labels and reservation
+	 * station rows that differ from the frame on screen.
+	 * @param css the new frame
+	 * @param shown the frame on screen, null to update everything
+	 */
+	public void updateFUnits(CycleSnapShot css, CycleSnapShot shown)
 	{
 		ArrayList<FUnitImage> units = css.getFUnits();
 		
 		for (int i = 0; i < units.size(); i++)
 		{
-			FunctionalUnit unit = funits.get(units.get(i).name);
-			if (units.get(i).currentInstruction >= 0)
-				unit.setInstructionLabel("" + units.get(i).currentInstruction);
-			else
-				unit.setInstructionLabel("NA");
-			if (units.get(i).FUbusy)
+			FUnitImage image = units.get(i);
+			FUnitImage before = (shown == null)? null : shown.getFUnit(image.name);
+			FunctionalUnit unit = funits.get(image.name);
+			if (before == null || before.currentInstruction != image.currentInstruction)
 			{
-				int cyclesLeft = units.get(i).executionCycle;
-				unit.setCyclesLeft(cyclesLeft);
+				if (image.currentInstruction >= 0)
+					unit.setInstructionLabel("" + image.currentInstruction);
+				else
+					unit.setInstructionLabel("NA");
 			}
-			else
+			if (before == null || before.FUbusy != image.FUbusy || before.executionCycle != image.executionCycle)
 			{
-				unit.setCyclesLeft(0);
+				if (image.FUbusy)
+				{
+					int cyclesLeft = image.executionCycle;
+					unit.setCyclesLeft(cyclesLeft);
+				}
+				else
+				{
+					unit.setCyclesLeft(0);
+				}
+				unit.setBusyLabel(image.FUbusy);
 			}
-			unit.setBusyLabel(units.get(i).FUbusy);
-			setRSinFUnit(unit, units.get(i));
+			setRSinFUnit(unit, image, before);
 		}
 	}
 
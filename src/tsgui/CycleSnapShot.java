@@ -25,12 +25,12 @@ public class CycleSnapShot {
 	private int cycle;
 	private int instruction;	// instruction waiting to be issued
 	
-	/* Variables needed to keep a copy of the registers */
-	private long[] gprRegs;
-	private String[] gprQi;
-	private long[] fprRegs;
-	private String[] fprQi;
-	private int[] memory;		// copy of memory
+	/* Variables needed to keep a copy of the registers, read directly by the FrameWriter */
+	long[] gprRegs;
+	String[] gprQi;
+	long[] fprRegs;
+	String[] fprQi;
+	int[] memory;		// copy of memory
 	private long value;
 	private String src;
 	
@@ -61,6 +61,31 @@ public class CycleSnapShot {
 		cloneFPR();
 	}
 	
+	/***
+	 * Rebuilds a frame read back from a frame file.  The arrays are kept, not copied.
+	 */
+	CycleSnapShot(int cycle, int instruction, Integer PC, ArrayList<FUnitImage> funits, long value, String src,
+			int[] memory, long[] gprRegs, String[] gprQi, long[] fprRegs, String[] fprQi)
+	{
+		this.cycle = cycle;
+		this.instruction = instruction;
+		this.PC = PC;
+		this.value = value;
+		this.src = src;
+		
+		this.funits = new LinkedHashMap<String, FUnitImage>();
+		for (FUnitImage unit : funits)
+		{
+			this.funits.put(unit.name, unit);
+		}
+		
+		this.memory = memory;
+		this.gprRegs = gprRegs;
+		this.gprQi = gprQi;
+		this.fprRegs = fprRegs;
+		this.fprQi = fprQi;
+	}
+	
 	private void cloneMemory()
 	{
 		memory = Memory.getInstance().cloneMemory();
@@ -141,6 +166,15 @@ public class CycleSnapShot {
 		return fprRegs.length;
 	}
 	
+	/***
+	 * @param name name of a functional unit
+	 * @return the image of the unit, or null if the frame has none of that name
+	 */
+	public FUnitImage getFUnit(String name)
+	{
+		return funits.get(name);
+	}
+	
 	public ArrayList<FUnitImage> getFUnits()
 	{
 		return new ArrayList<FUnitImage>(funits.values());
@@ -33,4 +33,17 @@ public class FUnitImage {
 		for (int i = 0; i < rs.length; i++)
 			RS[i] = new StationImage(rs[i]);
 	}
+	
+	// Rebuilds a unit read back from a frame file
+	FUnitImage(String name, StationImage[] rs, int RSCount, 
+			int executionCount, int currentInstruction, boolean FUBusy, int executionCycle)
+	{
+		this.name = name;
+		this.RSCount = RSCount;
+		this.executionCount = executionCount;
+		this.currentInstruction = currentInstruction;
+		this.FUbusy = FUBusy;
+		this.executionCycle = executionCycle;
+		RS = rs;
+	}
 }
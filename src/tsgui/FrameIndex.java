@@ -0,0 +1,120 @@
+/***
+ * The FrameIndex finds frames by PC and by cycle without scanning them.  Frames are numbered in the
+ * order they are added, from 0; for every PC the index keeps the sorted numbers of the frames at that
+ * PC, so the next or previous visit of a PC, such as the same instruction in the next iteration of a
+ * loop, is a binary search.  Cycles only grow from frame to frame, so the frame of a cycle is a binary
+ * search too.
+ */
+
+package tsgui;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class FrameIndex {
+
+	private int[] cycles = new int[1024];		// cycle of every frame
+	private int count;							// frames added
+	private HashMap<Integer, Frames> visits = new HashMap<Integer, Frames>();	// PC -> frames at it
+
+	/***
+	 * Sorted, growable list of frame numbers.
+	 */
+	private static class Frames
+	{
+		int[] frames = new int[4];
+		int size;
+
+		void add(int frame)
+		{
+			if (size == frames.length)
+				frames = Arrays.copyOf(frames, 2 * size);
+			frames[size++] = frame;
+		}
+
+		// Position of the first frame after the given one
+		int after(int frame)
+		{
+			int position = Arrays.binarySearch(frames, 0, size, frame);
+			return (position >= 0)? position + 1 : -position - 1;
+		}
+	}
+
+	/***
+	 * Indexes the next frame.
+	 * @param pc PC of the frame
+	 * @param cycle cycle of the frame, not less than that of the frame before
+	 * @return the number of the frame
+	 */
+	public int add(int pc, int cycle)
+	{
+		if (count == cycles.length)
+			cycles = Arrays.copyOf(cycles, 2 * count);
+		cycles[count] = cycle;
+		Frames frames = visits.get(pc);
+		if (frames == null)
+		{
+			frames = new Frames();
+			visits.put(pc, frames);
+		}
+		frames.add(count);
+		return count++;
+	}
+
+	/***
+	 * @return the number of frames indexed
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/***
+	 * Finds the next visit of a PC.
+	 * @param pc PC to look for
+	 * @param frame frame to search after
+	 * @return the first frame after frame at pc, or -1 if there is none
+	 */
+	public int next(int pc, int frame)
+	{
+		Frames frames = visits.get(pc);
+		if (frames == null)
+			return -1;
+		int position = frames.after(frame);
+		return (position < frames.size)? frames.frames[position] : -1;
+	}
+
+	/***
+	 * Finds the previous visit of a PC.
+	 * @param pc PC to look for
+	 * @param frame frame to search before
+	 * @return the last frame before frame at pc, or -1 if there is none
+	 */
+	public int previous(int pc, int frame)
+	{
+		Frames frames = visits.get(pc);
+		if (frames == null)
+			return -1;
+		int position = frames.after(frame - 1) - 1;
+		return (position >= 0)? frames.frames[position] : -1;
+	}
+
+	/***
+	 * Finds the frame of a cycle.
+	 * @param cycle cycle to look for
+	 * @return the first frame of the cycle, or -1 if no frame has it
+	 */
+	public int frameOfCycle(int cycle)
+	{
+		int low = 0, high = count;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (cycles[middle] < cycle)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return (low < count && cycles[low] == cycle)? low : -1;
+	}
+}
@@ -0,0 +1,196 @@
+/***
+ * The FrameReader replays a frame file written by the FrameWriter.  The file is memory-mapped and
+ * only its index is read when it is opened; a frame is rebuilt when it is asked for, from the key
+ * frame before it and the changes after, or from the frame read last when playback moves forward.
+ * Only the frame being shown is held in memory, however long the run.
+ */
+
+package tsgui;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class FrameReader {
+
+	private MappedByteBuffer buffer;
+	private int keyInterval;
+	private long[] offsets;					// where every frame starts
+	private FrameIndex index;
+
+	// Memory and registers of the frame read last
+	private int position = -1;
+	private CycleSnapShot frame;
+	private int[] memory;
+	private long[] gprRegs;
+	private String[] gprQi;
+	private long[] fprRegs;
+	private String[] fprQi;
+
+	/***
+	 * Maps a frame file and reads its index.
+	 * @param fileName frame file written by the FrameWriter
+	 * @throws IOException
+	 */
+	public FrameReader(String fileName) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try
+		{
+			if (file.length() > Integer.MAX_VALUE)
+				throw new IOException(fileName + " is too large to map");
+			if (file.length() < 32)
+				throw new IOException(fileName + " is not a frame file");
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed
+			file.close();
+		}
+		if (buffer.getInt(0) != FrameWriter.magic)
+			throw new IOException(fileName + " is not a frame file");
+		if (buffer.getInt(4) != FrameWriter.version)
+			throw new IOException(fileName + " was written by an incompatible simulator version");
+		memory = new int[buffer.getInt(8)];
+		int registers = buffer.getInt(12);
+		gprRegs = new long[registers];
+		gprQi = new String[registers];
+		fprRegs = new long[registers];
+		fprQi = new String[registers];
+		keyInterval = buffer.getInt(16);
+
+		int count = buffer.getInt(buffer.limit() - 12);
+		buffer.position((int)buffer.getLong(buffer.limit() - 8));
+		offsets = new long[count];
+		index = new FrameIndex();
+		for (int i = 0; i < count; i++)
+		{
+			offsets[i] = buffer.getLong();
+			int pc = buffer.getInt();
+			index.add(pc, buffer.getInt());
+		}
+	}
+
+	/***
+	 * @return the number of frames in the file
+	 */
+	public int size()
+	{
+		return offsets.length;
+	}
+
+	/***
+	 * @return the index of the frames by PC and by cycle, numbered as in read
+	 */
+	public FrameIndex getIndex()
+	{
+		return index;
+	}
+
+	/***
+	 * Rebuilds a frame.
+	 * @param n number of the frame, from 0
+	 * @return the frame, whose arrays are its own
+	 */
+	public CycleSnapShot read(int n)
+	{
+		if (n == position)
+			return frame;
+		int key = n - n % keyInterval;
+		int from = (n > position && position >= key)? position + 1 : key;
+		for (int i = from; i < n; i++)
+		{
+			buffer.position((int)offsets[i]);
+			readState(i % keyInterval == 0);
+		}
+		buffer.position((int)offsets[n]);
+		int cycle = buffer.getInt();
+		int instruction = buffer.getInt();
+		int pc = buffer.getInt();
+		long value = buffer.getLong();
+		String src = readString();
+		buffer.position((int)offsets[n]);
+		readState(n % keyInterval == 0);
+		ArrayList<FUnitImage> units = readFUnits();
+		position = n;
+		frame = new CycleSnapShot(cycle, instruction, pc, units, value, src, memory.clone(),
+			gprRegs.clone(), gprQi.clone(), fprRegs.clone(), fprQi.clone());
+		return frame;
+	}
+
+	// Applies the registers and memory of the frame at the buffer position, leaving it at its units
+	private void readState(boolean key)
+	{
+		buffer.position(buffer.position() + 20);
+		readString();
+		readRegisters(key, gprRegs, gprQi);
+		readRegisters(key, fprRegs, fprQi);
+		if (key)
+		{
+			for (int i = 0; i < memory.length; i++)
+				memory[i] = buffer.getInt();
+			return;
+		}
+		int changed = buffer.getInt();
+		for (int i = 0; i < changed; i++)
+		{
+			int address = buffer.getInt();
+			memory[address] = buffer.getInt();
+		}
+	}
+
+	private void readRegisters(boolean key, long[] regs, String[] qi)
+	{
+		int changed = key? regs.length : buffer.getInt();
+		for (int i = 0; i < changed; i++)
+		{
+			int register = key? i : buffer.getInt();
+			regs[register] = buffer.getLong();
+			qi[register] = readString();
+		}
+	}
+
+	private ArrayList<FUnitImage> readFUnits()
+	{
+		ArrayList<FUnitImage> units = new ArrayList<FUnitImage>();
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++)
+		{
+			String name = readString();
+			int RSCount = buffer.getInt();
+			int executionCount = buffer.getInt();
+			int currentInstruction = buffer.getInt();
+			boolean busy = buffer.getInt() != 0;
+			int executionCycle = buffer.getInt();
+			StationImage[] rs = new StationImage[buffer.getInt()];
+			for (int j = 0; j < rs.length; j++)
+			{
+				rs[j] = new StationImage();
+				rs[j].name = readString();
+				rs[j].busy = buffer.getInt() != 0;
+				rs[j].operation = readString();
+				rs[j].Vj = buffer.getLong();
+				rs[j].Vk = buffer.getLong();
+				rs[j].Qj = readString();
+				rs[j].Qk = readString();
+				rs[j].A = buffer.getLong();
+			}
+			units.add(new FUnitImage(name, rs, RSCount, executionCount, currentInstruction, busy, executionCycle));
+		}
+		return units;
+	}
+
+	private String readString()
+	{
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,236 @@
+/***
+ * The FrameWriter records the CycleSnapShots of a run to a frame file, so the run can be replayed in
+ * the TSGui later by a FrameReader without simulating it again.  Every keyInterval-th frame is a key
+ * frame holding all of memory and the registers; the frames in between hold only the words and
+ * registers that changed since the frame before, which keeps a long run small on disk.  The file
+ * ends with an index of every frame: where it starts, its PC and its cycle.
+ *
+ * File layout:
+ *   header:	magic, version, memory words, registers, keyInterval
+ *   frame:		cycle, instruction, PC, CDB value and source, registers, memory, functional units
+ *   index:		per frame its offset, PC and cycle
+ *   trailer:	frame count, offset of the index
+ */
+
+package tsgui;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+import simulator.Output;
+
+public class FrameWriter {
+
+	final static int magic = 0x54534652;	// "TSFR"
+	final static int version = 1;
+	final static int keyInterval = 256;		// frames from one key frame to the next
+
+	private DataOutputStream out;
+	private String fileName;
+	private long offset;					// bytes written so far
+	private int count;						// frames written so far
+	private long[] offsets = new long[1024];
+	private int[] pcs = new int[1024];
+	private int[] cycles = new int[1024];
+
+	// Contents of the frame before, to find what changed
+	private int[] memory;
+	private long[] gprRegs;
+	private String[] gprQi;
+	private long[] fprRegs;
+	private String[] fprQi;
+
+	/***
+	 * Creates the frame file.
+	 * @param fileName file to write, replaced if it exists
+	 * @throws IOException
+	 */
+	public FrameWriter(String fileName) throws IOException
+	{
+		this.fileName = fileName;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+	}
+
+	/***
+	 * Appends a frame.  The header is written with the first frame, which sets the memory and
+	 * register file sizes of the file.
+	 * @param css
+	 */
+	public void write(CycleSnapShot css)
+	{
+		try
+		{
+			if (count == 0)
+				writeHeader(css);
+			if (count == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, 2 * count);
+				pcs = Arrays.copyOf(pcs, 2 * count);
+				cycles = Arrays.copyOf(cycles, 2 * count);
+			}
+			offsets[count] = offset;
+			pcs[count] = css.getPC();
+			cycles[count] = css.getCycle();
+			boolean key = count % keyInterval == 0;
+			writeInt(css.getCycle());
+			writeInt(css.getInstruction());
+			writeInt(css.getPC());
+			writeLong(css.getValue());
+			writeString(css.getSrc());
+			writeRegisters(key, gprRegs, gprQi, css.gprRegs, css.gprQi);
+			writeRegisters(key, fprRegs, fprQi, css.fprRegs, css.fprQi);
+			writeMemory(key, css.memory);
+			writeFUnits(css);
+			memory = css.memory;
+			gprRegs = css.gprRegs;
+			gprQi = css.gprQi;
+			fprRegs = css.fprRegs;
+			fprQi = css.fprQi;
+			count++;
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	/***
+	 * Writes the frame index and closes the file.
+	 */
+	public void close()
+	{
+		try
+		{
+			long index = offset;
+			for (int i = 0; i < count; i++)
+			{
+				writeLong(offsets[i]);
+				writeInt(pcs[i]);
+				writeInt(cycles[i]);
+			}
+			writeInt(count);
+			writeLong(index);
+			out.close();
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	private void writeHeader(CycleSnapShot css) throws IOException
+	{
+		writeInt(magic);
+		writeInt(version);
+		writeInt(css.getMemSize());
+		writeInt(css.getRegistersSize());
+		writeInt(keyInterval);
+	}
+
+	// A key frame holds every register; other frames the count of registers changed, then each with its number
+	private void writeRegisters(boolean key, long[] oldRegs, String[] oldQi, long[] regs, String[] qi) throws IOException
+	{
+		int changed = 0;
+		for (int i = 0; i < regs.length; i++)
+			if (key || regs[i] != oldRegs[i] || !Objects.equals(qi[i], oldQi[i]))
+				changed++;
+		if (!key)
+			writeInt(changed);
+		for (int i = 0; i < regs.length; i++)
+			if (key || regs[i] != oldRegs[i] || !Objects.equals(qi[i], oldQi[i]))
+			{
+				if (!key)
+					writeInt(i);
+				writeLong(regs[i]);
+				writeString(qi[i]);
+			}
+	}
+
+	// A key frame holds every word; other frames the count of words changed, then each with its address
+	private void writeMemory(boolean key, int[] words) throws IOException
+	{
+		if (key)
+		{
+			for (int word : words)
+				writeInt(word);
+			return;
+		}
+		int changed = 0;
+		for (int i = 0; i < words.length; i++)
+			if (words[i] != memory[i])
+				changed++;
+		writeInt(changed);
+		for (int i = 0; i < words.length; i++)
+			if (words[i] != memory[i])
+			{
+				writeInt(i);
+				writeInt(words[i]);
+			}
+	}
+
+	private void writeFUnits(CycleSnapShot css) throws IOException
+	{
+		ArrayList<FUnitImage> units = css.getFUnits();
+		writeInt(units.size());
+		for (FUnitImage unit : units)
+		{
+			writeString(unit.name);
+			writeInt(unit.RSCount);
+			writeInt(unit.executionCount);
+			writeInt(unit.currentInstruction);
+			writeInt(unit.FUbusy? 1 : 0);
+			writeInt(unit.executionCycle);
+			writeInt(unit.RS.length);
+			for (StationImage station : unit.RS)
+			{
+				writeString(station.name);
+				writeInt(station.busy? 1 : 0);
+				writeString(station.operation);
+				writeLong(station.Vj);
+				writeLong(station.Vk);
+				writeString(station.Qj);
+				writeString(station.Qk);
+				writeLong(station.A);
+			}
+		}
+	}
+
+	private void writeInt(int value) throws IOException
+	{
+		out.writeInt(value);
+		offset += 4;
+	}
+
+	private void writeLong(long value) throws IOException
+	{
+		out.writeLong(value);
+		offset += 8;
+	}
+
+	// Length in bytes, -1 for null, then the UTF-8 bytes
+	private void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		out.write(bytes);
+		offset += bytes.length;
+	}
+
+	private void fail(IOException e)
+	{
+		Output.getInstance().flush();
+		System.out.println("Error: could not write frames " + fileName + ": " + e.getMessage());
+		System.exit(1);
+	}
+}
@@ -0,0 +1,80 @@
+/***
+ * The SnapshotQueue carries CycleSnapShots from the simulation thread to the TSGui while the
+ * simulation runs.  The queue is bounded: when the viewer falls behind and the queue is full, the
+ * simulation waits in publish until the viewer takes a frame, so the frames in flight never take
+ * more memory than the capacity allows.
+ */
+
+package tsgui;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotQueue {
+
+	private ArrayBlockingQueue<CycleSnapShot> frames;
+	private volatile boolean closed;		// set once the simulation has published its last frame
+
+	public SnapshotQueue(int capacity)
+	{
+		frames = new ArrayBlockingQueue<CycleSnapShot>(capacity);
+	}
+
+	/***
+	 * Hands a frame to the viewer, waiting while the queue is full.
+	 * @param snapshot
+	 */
+	public void publish(CycleSnapShot snapshot)
+	{
+		try
+		{
+			frames.put(snapshot);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/***
+	 * Marks the end of the simulation, after which no more frames are published.
+	 */
+	public void close()
+	{
+		closed = true;
+	}
+
+	/***
+	 * Takes the next frame if one has arrived.
+	 * @return the frame, or null if none is waiting
+	 */
+	public CycleSnapShot poll()
+	{
+		return frames.poll();
+	}
+
+	/***
+	 * Waits for the next frame.
+	 * @return the frame, or null if the simulation ended without publishing another
+	 * @throws InterruptedException
+	 */
+	public CycleSnapShot take() throws InterruptedException
+	{
+		while (true)
+		{
+			// Read closed first, so a frame published just before close is not missed
+			boolean last = closed;
+			CycleSnapShot snapshot = frames.poll(100, TimeUnit.MILLISECONDS);
+			if (snapshot != null || last)
+				return snapshot;
+		}
+	}
+
+	/***
+	 * @return true once the simulation has ended and every frame has been taken
+	 */
+	public boolean isFinished()
+	{
+		return closed && frames.isEmpty();
+	}
+}
@@ -7,6 +7,8 @@
 
 package tsgui;
 
+import java.util.Objects;
+
 import simulator.Station;
 
 public class StationImage {
@@ -20,6 +22,11 @@ public class StationImage {
     public String Qk;         //name of reservation station producing Vk
     public long A;            //used to hold immediate field or eff address
     
+	// Filled in field by field by the FrameReader
+	StationImage()
+	{
+	}
+	
 	public StationImage(Station station)
 	{
 		name = station.name;
@@ -27,8 +34,19 @@ public class StationImage {
 		operation = station.operation;
 		Vj = station.Vj;
 		Vk = station.Vk;
-		Qj = station.Qj;
-		Qk = station.Qk;
+		Qj = station.getQj();
+		Qk = station.getQk();
 		A = station.A;
 	}
+	
+	/***
+	 * Compares the fields shown for a reservation station, so unchanged rows need not be redrawn.
+	 * @param other station image of another frame, may be null
+	 * @return true if other shows the same entry
+	 */
+	public boolean sameAs(StationImage other)
+	{
+		return other != null && busy == other.busy && Vj == other.Vj && Vk == other.Vk && A == other.A &&
+			Objects.equals(operation, other.operation) && Objects.equals(Qj, other.Qj) && Objects.equals(Qk, other.Qk);
+	}
 }
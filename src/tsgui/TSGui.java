@@ -2,6 +2,9 @@
  * The TSGui class is the main driving class for the representation of the simulation.
  * This class can simply be instantiated with a list of CycleSnapShots and it will
  * provide the user with the representation of the simulation complete with controls.
+ * It can also follow a simulation while it runs, taking frames from a SnapshotQueue as
+ * playback reaches them and keeping the most recent ones for stepping back.  Or it can replay
+ * a run recorded earlier, reading frames from a frame file as they are shown.
  * 
  * Author:	Stephen Ellison, Jr.
  */
@@ -14,9 +17,10 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Objects;
 
 import javax.swing.Box;
 import javax.swing.ButtonGroup;
@@ -31,6 +35,8 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import simulator.Simulator;
 
@@ -41,12 +47,25 @@ public class TSGui extends JFrame implements ActionListener{
 	public MemPanel memory;
 	private ArrayList<CycleSnapShot> snapshots;
 	private int frameIndex;
+	private CycleSnapShot shown;			// frame on screen, null before the first
+	private SnapshotQueue stream;			// frames still to come from a running simulation, null if none
+	private FrameReader file;				// frames replayed from a frame file, null if none
+	private FrameIndex index;				// every frame seen, by PC and by cycle
+	private int firstFrame;					// number in index of the frame at snapshots[0]
 	
-	private final static int slowSpeed = 2000;
-	private final static int mediumSpeed = 1000;
-	private final static int fastSpeed = 500;
-	private int selectedSpeed = mediumSpeed;
+	private final static int history = 1000;	// frames kept from a stream for Prev and GoTo
+	
+	// Playback rates in cycles per second
+	private final static double slowSpeed = 0.5;
+	private final static double mediumSpeed = 1;
+	private final static double fastSpeed = 2;
+	private final static double fasterSpeed = 25;
+	private final static double fastestSpeed = 500;
+	private double selectedSpeed = mediumSpeed;
+	private final static int refresh = 16;		// shortest time between frames drawn, in ms
 	private Timer timer;
+	private long playStart;					// System.nanoTime() at which playback started at this rate
+	private long played;					// frames played since playStart
 	
 	private JButton startButton;
 	private JTextField cycleGoTo;
@@ -56,12 +75,118 @@ public class TSGui extends JFrame implements ActionListener{
 	{
 		super("Tomasulo Simulator");
 		this.snapshots = snapshots;
-		timer = new Timer();
 		if (snapshots.size() <= 0)
 		{
 			System.out.println(snapshots.size() + " No snapshots found");
 			System.exit(0);
 		}
+		index = new FrameIndex();
+		for (CycleSnapShot css : snapshots)
+			index.add(css.getPC(), css.getCycle());
+		buildWindow();
+	}
+	
+	/***
+	 * Follows a running simulation, starting from its first frame.
+	 * @param stream frames published by the simulation
+	 * @param first the first frame taken from the stream
+	 */
+	public TSGui(SnapshotQueue stream, CycleSnapShot first)
+	{
+		super("Tomasulo Simulator");
+		this.stream = stream;
+		snapshots = new ArrayList<CycleSnapShot>();
+		snapshots.add(first);
+		index = new FrameIndex();
+		index.add(first.getPC(), first.getCycle());
+		buildWindow();
+	}
+	
+	/***
+	 * Replays a run recorded to a frame file.  Frames are read from the file as they are shown.
+	 * @param file the frame file
+	 */
+	public TSGui(FrameReader file)
+	{
+		super("Tomasulo Simulator");
+		this.file = file;
+		index = file.getIndex();
+		buildWindow();
+	}
+	
+	/***
+	 * Opens the viewer on a frame file written by an earlier run.
+	 * @param fileName frame file written by the FrameWriter
+	 */
+	public static void replay(String fileName)
+	{
+		final FrameReader file;
+		try
+		{
+			file = new FrameReader(fileName);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Error: could not read frames " + fileName + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		try
+		{
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run()
+				{
+					new TSGui(file);
+				}
+			});
+		}
+		catch (Exception e)
+		{
+			Throwable cause = (e instanceof InvocationTargetException)? e.getCause() : e;
+			System.out.println("Error: could not open the GUI: " + cause);
+			System.exit(1);
+		}
+	}
+	
+	/***
+	 * Opens the viewer on a running simulation once its first frame arrives.  Until playback
+	 * takes frames, the simulation runs ahead only as far as the queue holds.
+	 * @param stream frames published by the simulation
+	 */
+	public static void show(final SnapshotQueue stream)
+	{
+		Thread opener = new Thread("TSGui opener") {
+			public void run()
+			{
+				try
+				{
+					final CycleSnapShot first = stream.take();
+					if (first == null)
+					{
+						System.out.println("0 No snapshots found");
+						System.exit(0);
+					}
+					SwingUtilities.invokeAndWait(new Runnable() {
+						public void run()
+						{
+							new TSGui(stream, first);
+						}
+					});
+				}
+				catch (Exception e)
+				{
+					// The simulation would wait forever on a viewer that does not exist
+					Throwable cause = (e instanceof InvocationTargetException)? e.getCause() : e;
+					System.out.println("Error: could not open the GUI: " + cause);
+					System.exit(1);
+				}
+			}
+		};
+		opener.start();
+	}
+	
+	private void buildWindow()
+	{
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocation(100, 50);
         setSize(new Dimension(900, 700));
@@ -71,11 +196,14 @@ public class TSGui extends JFrame implements ActionListener{
         
         add(createMenu(), BorderLayout.NORTH);
         
-        canvas = new Canvas(this, snapshots.get(0));
+        canvas = new Canvas(this, frame(0));
         add(canvas, BorderLayout.CENTER);
         
         memory = new MemPanel();
         add(memory, BorderLayout.EAST);
+        
+        timer = new Timer(refresh, new ExecuteCycle(this));
+        timer.setCoalesce(true);
                        
         // designPanelLayout();
         populateGuiFromSnapshot(0);
@@ -108,14 +236,22 @@ public class TSGui extends JFrame implements ActionListener{
         medium.setSelected(true);
         JRadioButtonMenuItem fast = new JRadioButtonMenuItem("Fast");
         fast.addActionListener(this);
+        JRadioButtonMenuItem faster = new JRadioButtonMenuItem("Faster");
+        faster.addActionListener(this);
+        JRadioButtonMenuItem fastest = new JRadioButtonMenuItem("Fastest");
+        fastest.addActionListener(this);
         
         ButtonGroup speed = new ButtonGroup();
         speed.add(slow);
         speed.add(medium);
         speed.add(fast);
+        speed.add(faster);
+        speed.add(fastest);
         speedMenu.add(slow);
         speedMenu.add(medium);
         speedMenu.add(fast);
+        speedMenu.add(faster);
+        speedMenu.add(fastest);
         
         JMenuItem aboutMenuItem = new JMenuItem("About");
         aboutMenuItem.addActionListener(this);
@@ -129,39 +265,54 @@ public class TSGui extends JFrame implements ActionListener{
         return menuBar;
 	}
 	
+	/***
+	 * Shows a frame.  Only the memory words, registers and reservation stations that differ from
+	 * the frame on screen are set, so a step redraws the few cells an instruction changed instead
+	 * of every word of memory.
+	 * @param index index of the frame in snapshots, or in the frame file
+	 */
 	private void populateGuiFromSnapshot(int index)
 	{
-		CycleSnapShot css = snapshots.get(index);
+		CycleSnapShot css = frame(index);
+		if (css == shown)
+			return;
 		canvas.setPC(css.getPC());
 		canvas.setInstrReg(css.getInstruction());
 		canvas.setCDB(css.getValue(), css.getSrc());
-		fillMemory(css);
-		fillRegs(css);
-		canvas.updateFUnits(css);
+		fillMemory(css, shown);
+		fillRegs(css, shown);
+		canvas.updateFUnits(css, shown);
 		canvas.setCycle(css.getCycle());
+		shown = css;
 	}
 	
-	private void fillMemory(CycleSnapShot css)
+	private void fillMemory(CycleSnapShot css, CycleSnapShot before)
 	{
 		for (int i = 0; i < css.getMemSize(); i++)
 		{
-			memory.setMemLocation(i, css.getMemoryValueAt(i));
+			int value = css.getMemoryValueAt(i);
+			if (before == null || before.getMemoryValueAt(i) != value)
+				memory.setMemLocation(i, value);
 		}
 	}
 	
-	private void fillRegs(CycleSnapShot css)
+	private void fillRegs(CycleSnapShot css, CycleSnapShot before)
 	{
 		for (int i = 0; i < css.getRegistersSize(); i++)
 		{
-			canvas.setFPR(i, css.getFPRRegAt(i), css.getFPRQiAt(i));
-			canvas.setGPR(i, css.getGPRRegAt(i), css.getGPRQiAt(i));
+			if (before == null || before.getFPRRegAt(i) != css.getFPRRegAt(i) ||
+					!Objects.equals(css.getFPRQiAt(i), before.getFPRQiAt(i)))
+				canvas.setFPR(i, css.getFPRRegAt(i), css.getFPRQiAt(i));
+			if (before == null || before.getGPRRegAt(i) != css.getGPRRegAt(i) ||
+					!Objects.equals(css.getGPRQiAt(i), before.getGPRQiAt(i)))
+				canvas.setGPR(i, css.getGPRRegAt(i), css.getGPRQiAt(i));
 		}
 	}
 	
 	private void goToCycle(int cycleNumber)
 	{
-		frameIndex = (cycleNumber >= 0 && cycleNumber < snapshots.size())? cycleNumber : frameIndex;
-		populateGuiFromSnapshot(frameIndex);
+		goToFrame(index.frameOfCycle(cycleNumber));
+		canvas.setCycle(frame(frameIndex).getCycle());
 	}
 	
 	private void goToPC(int pcNumber)
@@ -169,15 +320,127 @@ public class TSGui extends JFrame implements ActionListener{
 		if (pcNumber%4 != 0)
 			return;
 		
-		for (int i = 0; i < snapshots.size(); i++)
+		goToFrame(index.next(pcNumber, firstFrame - 1));
+	}
+	
+	/***
+	 * Moves to the next frame at a PC, the same instruction in the next iteration of a loop.
+	 * @param pcNumber
+	 */
+	private void nextPC(int pcNumber)
+	{
+		if (pcNumber%4 != 0)
+			return;
+		
+		goToFrame(index.next(pcNumber, firstFrame + frameIndex));
+	}
+	
+	/***
+	 * Moves to the previous frame at a PC.
+	 * @param pcNumber
+	 */
+	private void prevPC(int pcNumber)
+	{
+		if (pcNumber%4 != 0)
+			return;
+		
+		goToFrame(index.previous(pcNumber, firstFrame + frameIndex));
+	}
+	
+	// Shows a frame by its number in the index, unless it is -1 or no longer kept
+	private void goToFrame(int frame)
+	{
+		if (frame < firstFrame)
+			return;
+		frameIndex = frame - firstFrame;
+		populateGuiFromSnapshot(frameIndex);
+	}
+	
+	private CycleSnapShot frame(int index)
+	{
+		return (file != null)? file.read(index) : snapshots.get(index);
+	}
+	
+	private int frameCount()
+	{
+		return (file != null)? file.size() : snapshots.size();
+	}
+	
+	/***
+	 * Moves to the next frame and shows it.
+	 */
+	private void advance()
+	{
+		if (step())
+			populateGuiFromSnapshot(frameIndex);
+	}
+	
+	/***
+	 * Moves to the next frame without showing it, taking it from the stream when playback has caught
+	 * up with the frames kept.  The oldest frame is dropped once more than history are kept.
+	 * @return false if there is no next frame yet
+	 */
+	private boolean step()
+	{
+		if (frameIndex < frameCount() - 1)
+			frameIndex++;
+		else if (stream != null)
 		{
-			if (snapshots.get(i).getPC() == pcNumber)
+			CycleSnapShot next = stream.poll();
+			if (next == null)
+				return false;
+			snapshots.add(next);
+			index.add(next.getPC(), next.getCycle());
+			frameIndex++;
+			if (snapshots.size() > history)
 			{
-				frameIndex = i;
-				populateGuiFromSnapshot(frameIndex);
-				return;
+				snapshots.remove(0);
+				firstFrame++;
+				frameIndex--;
 			}
 		}
+		else
+			return false;
+		return true;
+	}
+	
+	/***
+	 * Plays the frames due at the selected speed since playback started and shows the last of them.
+	 * Frames in between are not drawn, so playback keeps its rate when drawing every frame would
+	 * take longer than the frames last; when no more frames are ready, the frames missed are not
+	 * made up later.
+	 */
+	private void play()
+	{
+		long due = (long)((System.nanoTime() - playStart) / 1e9 * selectedSpeed) + 1;
+		boolean moved = false;
+		while (played < due)
+		{
+			if (!step())
+			{
+				played = due;
+				break;
+			}
+			played++;
+			moved = true;
+		}
+		if (moved)
+			populateGuiFromSnapshot(frameIndex);
+	}
+	
+	private void startTimer()
+	{
+		playStart = System.nanoTime();
+		played = 0;
+		timer.setDelay(Math.max(refresh, (int)(1000 / selectedSpeed)));
+		timer.setInitialDelay(0);
+		timer.restart();
+	}
+	
+	private void retreat()
+	{
+		frameIndex = (frameIndex <= 0)? frameIndex : frameIndex - 1;
+		populateGuiFromSnapshot(frameIndex);
 	}
 	
 	public int getFrameIndex()
@@ -192,23 +455,20 @@ public class TSGui extends JFrame implements ActionListener{
 		else if (e.getActionCommand() == "Start")
 		{
 			canvas.setStartButtonEnabled(false);
-			timer = new Timer();
-			timer.schedule(new ExecuteCycle(this), 0, selectedSpeed);
+			startTimer();
 		}
 		else if (e.getActionCommand() == "Stop")
 		{
 			canvas.setStartButtonEnabled(true);
-			timer.cancel();
+			timer.stop();
 		}
 		else if (e.getActionCommand() == "Next")
 		{
-			frameIndex = (frameIndex >= snapshots.size()-1)? frameIndex : frameIndex + 1;
-			populateGuiFromSnapshot(frameIndex);
+			advance();
 		}
 		else if (e.getActionCommand() == "Prev")
 		{
-			frameIndex = (frameIndex <= 0)? frameIndex : frameIndex - 1;
-			populateGuiFromSnapshot(frameIndex);
+			retreat();
 		}
 		else if (e.getActionCommand() == "GoTo Cycle")
 		{
@@ -218,6 +478,14 @@ public class TSGui extends JFrame implements ActionListener{
 		{
 			goToPC(canvas.getPCNumber());
 		}
+		else if (e.getActionCommand() == "Next PC")
+		{
+			nextPC(canvas.getPCNumber());
+		}
+		else if (e.getActionCommand() == "Prev PC")
+		{
+			prevPC(canvas.getPCNumber());
+		}
 		else if (e.getActionCommand() == "Slow")
 		{
 			selectedSpeed = slowSpeed;
@@ -233,6 +501,16 @@ public class TSGui extends JFrame implements ActionListener{
 			selectedSpeed = fastSpeed;
 			stopAndRestartTimer();
 		}
+		else if (e.getActionCommand() == "Faster")
+		{
+			selectedSpeed = fasterSpeed;
+			stopAndRestartTimer();
+		}
+		else if (e.getActionCommand() == "Fastest")
+		{
+			selectedSpeed = fastestSpeed;
+			stopAndRestartTimer();
+		}
 		else if (e.getActionCommand() == "About")
 		{
 			String aboutInfo = "Graphical View for Tomasulo Simulator\n" +
@@ -245,12 +523,14 @@ public class TSGui extends JFrame implements ActionListener{
 	
 	private void stopAndRestartTimer()
 	{
-		timer.cancel();
-		timer = new Timer();
-		timer.schedule(new ExecuteCycle(this), 0, selectedSpeed);
+		if (timer.isRunning())
+			startTimer();
 	}
 
-	public class ExecuteCycle extends TimerTask
+	/***
+	 * Playback tick.  It runs on the Event Dispatch Thread, like every other update of the window.
+	 */
+	public class ExecuteCycle implements ActionListener
 	{
 		private TSGui parent;
 
@@ -260,10 +540,9 @@ public class TSGui extends JFrame implements ActionListener{
 		}
 		
 		@Override
-		public void run() 
+		public void actionPerformed(ActionEvent e) 
 		{
-			frameIndex = (frameIndex >= snapshots.size()-1)? frameIndex : frameIndex + 1;
-			parent.populateGuiFromSnapshot(frameIndex);
+			parent.play();
 		}
 		
 	}